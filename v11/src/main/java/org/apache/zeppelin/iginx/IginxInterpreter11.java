@@ -1,7 +1,10 @@
 package org.apache.zeppelin.iginx;
 
+import java.util.List;
 import java.util.Properties;
 import org.apache.zeppelin.interpreter.*;
+import org.apache.zeppelin.interpreter.thrift.InterpreterCompletion;
+import org.apache.zeppelin.scheduler.Scheduler;
 
 public class IginxInterpreter11 extends AbstractInterpreter {
 
@@ -38,11 +41,22 @@ public class IginxInterpreter11 extends AbstractInterpreter {
     innerInterpreter.cancel(interpreterContext);
   }
 
+  @Override
+  public Scheduler getScheduler() {
+    return innerInterpreter.getScheduler();
+  }
+
   @Override
   public FormType getFormType() throws InterpreterException {
     return innerInterpreter.getFormType();
   }
 
+  @Override
+  public List<InterpreterCompletion> completion(
+      String buf, int cursor, InterpreterContext interpreterContext) throws InterpreterException {
+    return innerInterpreter.completion(buf, cursor, interpreterContext);
+  }
+
   @Override
   public int getProgress(InterpreterContext interpreterContext) throws InterpreterException {
     return innerInterpreter.getProgress(interpreterContext);
@@ -1,6 +1,5 @@
 package org.apache.zeppelin.iginx;
 
-import static cn.edu.tsinghua.iginx.utils.FileUtils.exportByteStream;
 import static org.apache.zeppelin.iginx.SimpleFileServer.getLocalHostExactAddress;
 
 import cn.edu.tsinghua.iginx.constant.GlobalConstant;
@@ -12,28 +11,36 @@ import cn.edu.tsinghua.iginx.thrift.LoadUDFResp;
 import cn.edu.tsinghua.iginx.thrift.SqlType;
 import cn.edu.tsinghua.iginx.utils.FormatUtils;
 import cn.edu.tsinghua.iginx.utils.Pair;
-import com.alibaba.fastjson2.JSON;
 import java.io.*;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.security.InvalidParameterException;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.zip.Deflater;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.StringBuilderWriter;
 import org.apache.commons.lang3.SystemUtils;
 import org.apache.zeppelin.iginx.util.*;
 import org.apache.zeppelin.iginx.util.HttpUtil;
-import org.apache.zeppelin.iginx.util.SqlCmdUtil;
 import org.apache.zeppelin.interpreter.*;
+import org.apache.zeppelin.interpreter.thrift.InterpreterCompletion;
+import org.apache.zeppelin.scheduler.Scheduler;
+import org.apache.zeppelin.scheduler.SchedulerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,9 +61,55 @@ public class IginxInterpreter8 extends Interpreter {
   private static final String IGINX_ZEPPELIN_IP = "iginx.zeppelin.ip";
   private static final String IGINX_UPLOAD_FILE_MAX_SIZE = "iginx.zeppelin.upload.file.max.size";
   private static final String IGINX_UPLOAD_DIR_MAX_SIZE = "iginx.zeppelin.upload.dir.max.size";
+  private static final String IGINX_FILE_HTTP_THREADS = "iginx.http.file.threads";
+  private static final String IGINX_FILE_HTTP_QUEUE_SIZE = "iginx.http.file.queue.size";
+  private static final String IGINX_FILE_HTTP_UPLOAD_THREADS = "iginx.http.file.upload.threads";
+  private static final String IGINX_FILE_HTTP_UPLOAD_QUEUE_SIZE =
+      "iginx.http.file.upload.queue.size";
+  private static final String IGINX_FILE_HTTP_BACKLOG = "iginx.http.file.backlog";
+  private static final String IGINX_FILE_HTTP_VIRTUAL_THREADS = "iginx.http.file.virtual.threads";
   private static final String IGINX_NOTE_FONT_SIZE_ENABLE = "iginx.zeppelin.note.font.size.enable";
   private static final String IGINX_NOTE_FONT_SIZE = "iginx.zeppelin.note.font.size";
   private static final String IGINX_GRAPH_TREE_ENABLE = "iginx.graph.tree.enable";
+  private static final String IGINX_GRAPH_CACHE_SIZE = "iginx.graph.cache.size";
+  private static final String IGINX_COLUMN_CATALOG_ENABLE = "iginx.column.catalog.enable";
+  private static final String IGINX_COLUMN_CATALOG_REFRESH_INTERVAL =
+      "iginx.column.catalog.refresh.interval";
+  private static final String IGINX_COLUMN_CATALOG_MIN_REFRESH_INTERVAL =
+      "iginx.column.catalog.min.refresh.interval";
+  private static final String IGINX_COLUMN_CATALOG_TTL = "iginx.column.catalog.ttl";
+  private static final String IGINX_GRAPH_TREE_PAGE_SIZE = "iginx.graph.tree.page.size";
+  private static final String IGINX_GRAPH_TREE_MAX_PARAGRAPHS = "iginx.graph.tree.max.paragraphs";
+  private static final String IGINX_SESSION_POOL_MIN_SIZE = "iginx.session.pool.min.size";
+  private static final String IGINX_SESSION_POOL_MAX_SIZE = "iginx.session.pool.max.size";
+  private static final String IGINX_SESSION_POOL_IDLE_TIMEOUT = "iginx.session.pool.idle.timeout";
+  private static final String IGINX_SESSION_POOL_BORROW_TIMEOUT =
+      "iginx.session.pool.borrow.timeout";
+  private static final String IGINX_CONCURRENCY_MAX = "iginx.concurrency.max";
+  private static final String IGINX_EXECUTOR_POOL_SIZE = "iginx.executor.pool.size";
+  private static final String IGINX_EXECUTOR_QUEUE_SIZE = "iginx.executor.queue.size";
+  private static final String IGINX_QUERY_STREAMING_ENABLE = "iginx.query.streaming.enable";
+  private static final String IGINX_QUERY_MAX_ROWS = "iginx.query.max.rows";
+  private static final String IGINX_QUERY_MAX_SIZE = "iginx.query.max.size";
+  private static final String IGINX_RESULT_SPILL_ENABLE = "iginx.result.spill.enable";
+  private static final String IGINX_RESULT_SPILL_ROWS = "iginx.result.spill.rows";
+  private static final String IGINX_RESULT_SPILL_SIZE = "iginx.result.spill.size";
+  private static final String IGINX_RESULT_PREVIEW_ROWS = "iginx.result.preview.rows";
+  private static final String IGINX_DOWNSAMPLE_POINTS = "iginx.downsample.points";
+  private static final String IGINX_QUERY_CACHE_ENABLE = "iginx.query.cache.enable";
+  private static final String IGINX_QUERY_CACHE_MAX_ENTRIES = "iginx.query.cache.max.entries";
+  private static final String IGINX_QUERY_CACHE_MAX_SIZE = "iginx.query.cache.max.size";
+  private static final String IGINX_QUERY_CACHE_TTL = "iginx.query.cache.ttl";
+  private static final String IGINX_INSERT_BATCH_ENABLE = "iginx.insert.batch.enable";
+  private static final String IGINX_INSERT_BATCH_SIZE = "iginx.insert.batch.size";
+  private static final String IGINX_LOAD_CHUNK_SIZE = "iginx.load.chunk.size";
+  private static final String IGINX_LOAD_MAX_INFLIGHT = "iginx.load.max.inflight";
+  private static final String IGINX_OUTFILE_PIPELINE_ENABLE = "iginx.outfile.pipeline.enable";
+  private static final String IGINX_OUTFILE_PIPELINE_DEPTH = "iginx.outfile.pipeline.depth";
+  private static final String IGINX_OUTFILE_WRITER_THREADS = "iginx.outfile.writer.threads";
+  private static final String IGINX_OUTFILE_ZIP_LEVEL = "iginx.outfile.zip.level";
+  private static final String IGINX_OUTFILE_ZIP_MATERIALIZE = "iginx.outfile.zip.materialize";
+  private static final String IGINX_OUTFILE_ZIP_THREADS = "iginx.outfile.zip.threads";
 
   private static final String DEFAULT_HOST = "127.0.0.1";
   private static final String DEFAULT_PORT = "6888";
@@ -72,15 +125,55 @@ public class IginxInterpreter8 extends Interpreter {
   private static final String DEFAULT_UPLOAD_DIR = "uploads";
   private static final String DEFAULT_UPLOAD_FILE_MAX_SIZE = "10"; // GB
   private static final String DEFAULT_UPLOAD_DIR_MAX_SIZE = "200"; // GB
+  private static final String DEFAULT_FILE_HTTP_THREADS = "16";
+  private static final String DEFAULT_FILE_HTTP_QUEUE_SIZE = "256";
+  private static final String DEFAULT_FILE_HTTP_UPLOAD_THREADS = "2";
+  private static final String DEFAULT_FILE_HTTP_UPLOAD_QUEUE_SIZE = "16";
+  private static final String DEFAULT_FILE_HTTP_BACKLOG = "128";
+  private static final String DEFAULT_FILE_HTTP_VIRTUAL_THREADS = "false";
   private static final String DEFAULT_NOTE_FONT_SIZE_ENABLE = "false";
   private static final String DEFAULT_NOTE_FONT_SIZE = "9.0";
   private static final String DEFAULT_IGINX_GRAPH_TREE_ENABLE = "true";
+  private static final String DEFAULT_GRAPH_CACHE_SIZE = "64"; // MB
+  private static final String DEFAULT_GRAPH_TREE_PAGE_SIZE = "200";
+  private static final String DEFAULT_COLUMN_CATALOG_ENABLE = "true";
+  private static final String DEFAULT_COLUMN_CATALOG_REFRESH_INTERVAL = "600"; // s
+  private static final String DEFAULT_COLUMN_CATALOG_MIN_REFRESH_INTERVAL = "10"; // s
+  private static final String DEFAULT_COLUMN_CATALOG_TTL = "300"; // s
+  private static final int COMPLETION_LIMIT = 200;
+  private static final String DEFAULT_GRAPH_TREE_MAX_PARAGRAPHS = "16";
+  private static final String DEFAULT_SESSION_POOL_MIN_SIZE = "1";
+  private static final String DEFAULT_SESSION_POOL_MAX_SIZE = "8";
+  private static final String DEFAULT_SESSION_POOL_IDLE_TIMEOUT = "600000"; // ms
+  private static final String DEFAULT_SESSION_POOL_BORROW_TIMEOUT = "30000"; // ms
+  private static final String DEFAULT_CONCURRENCY_MAX = "10";
+  private static final String DEFAULT_EXECUTOR_POOL_SIZE = "16";
+  private static final String DEFAULT_EXECUTOR_QUEUE_SIZE = "100";
+  private static final String DEFAULT_QUERY_STREAMING_ENABLE = "false";
+  private static final String DEFAULT_QUERY_MAX_ROWS = "100000";
+  private static final String DEFAULT_QUERY_MAX_SIZE = "64"; // MB
+  private static final String DEFAULT_RESULT_SPILL_ENABLE = "false";
+  private static final String DEFAULT_RESULT_SPILL_ROWS = "10000";
+  private static final String DEFAULT_RESULT_SPILL_SIZE = "16"; // MB
+  private static final String DEFAULT_RESULT_PREVIEW_ROWS = "1000";
+  private static final String DEFAULT_DOWNSAMPLE_POINTS = "1000";
+  private static final String DEFAULT_QUERY_CACHE_ENABLE = "false";
+  private static final String DEFAULT_QUERY_CACHE_MAX_ENTRIES = "256";
+  private static final String DEFAULT_QUERY_CACHE_MAX_SIZE = "64"; // MB
+  private static final String DEFAULT_QUERY_CACHE_TTL = "60"; // s
+  private static final String DEFAULT_INSERT_BATCH_ENABLE = "false";
+  private static final String DEFAULT_INSERT_BATCH_SIZE = "500";
+  private static final String DEFAULT_LOAD_CHUNK_SIZE = "32"; // MB
+  private static final String DEFAULT_LOAD_MAX_INFLIGHT = "2";
+  private static final String DEFAULT_OUTFILE_PIPELINE_ENABLE = "false";
+  private static final String DEFAULT_OUTFILE_PIPELINE_DEPTH = "2";
+  private static final String DEFAULT_OUTFILE_WRITER_THREADS = "4";
+  private static final String DEFAULT_OUTFILE_ZIP_LEVEL = "6";
+  private static final String DEFAULT_OUTFILE_ZIP_MATERIALIZE = "false";
+  private static final String DEFAULT_OUTFILE_ZIP_THREADS = "4";
 
   private static final String TAB = "\t";
   private static final String NEWLINE = "\n";
-  private static final String WHITESPACE = " ";
-  private static final String MULTISPACE = " +";
-  private static final String SEMICOLON = ";";
   private static final String SUCCESS = "Success!";
   private static final String NO_DATA_TO_PRINT = "No data to print.\n";
 
@@ -90,7 +183,7 @@ public class IginxInterpreter8 extends Interpreter {
   private String password = "";
   private String timePrecision = "";
   private String outfileDir = "";
-  private String fetchSize = "";
+  private int fetchSize = 1000;
   private int outfileMaxNum = 0;
   private int outfileMaxSize = 0;
   private int fileHttpPort = 0;
@@ -98,26 +191,72 @@ public class IginxInterpreter8 extends Interpreter {
   private String localIpAddress = "";
   private long uploadFileMaxSize = 0;
   private long uploadDirMaxSize = 0;
+  private int fileHttpThreads = 16;
+  private int fileHttpQueueSize = 256;
+  private int fileHttpUploadThreads = 2;
+  private int fileHttpUploadQueueSize = 16;
+  private int fileHttpBacklog = 128;
+  private boolean fileHttpVirtualThreads = false;
   private boolean noteFontSizeEnable = false;
   private double noteFontSize = 9.0;
   private boolean graphTreeEnable = true;
+  private long graphCacheSize = 64;
+  private int graphTreePageSize = 200;
+  private boolean columnCatalogEnable = true;
+  private long columnCatalogRefreshInterval = 600;
+  private long columnCatalogMinRefreshInterval = 10;
+  private long columnCatalogTtl = 300;
+  private int graphTreeMaxParagraphs = 16;
+  private int sessionPoolMinSize = 1;
+  private int sessionPoolMaxSize = 8;
+  private long sessionPoolIdleTimeout = 0;
+  private long sessionPoolBorrowTimeout = 0;
+  private int executorPoolSize = 16;
+  private int executorQueueSize = 100;
+  private boolean queryStreamingEnable = false;
+  private long queryMaxRows = 0;
+  private long queryMaxSize = 0;
+  private boolean resultSpillEnable = false;
+  private long resultSpillRows = 0;
+  private long resultSpillSize = 0;
+  private int resultPreviewRows = 0;
+  private int downsamplePoints = 1000;
+  private boolean queryCacheEnable = false;
+  private boolean insertBatchEnable = false;
+  private int insertBatchSize = 500;
+  private long loadChunkSize = 0;
+  private int loadMaxInFlight = 2;
+  private boolean outfilePipelineEnable = false;
+  private int outfilePipelineDepth = 2;
+  private int outfileWriterThreads = 4;
+  private int outfileZipLevel = 6;
+  private boolean outfileZipMaterialize = false;
+  private int outfileZipThreads = 4;
 
   private Queue<String> downloadFileQueue = new LinkedList<>();
   private Queue<Double> downloadFileSizeQueue = new LinkedList<>();
   private double downloadFileTotalSize = 0L;
 
-  private String outfileRegex =
-      "(?i)(\\bINTO\\s+OUTFILE\\s+\")(.*?)(\"\\s+AS\\s+STREAM)(?:\\s+showimg\\s+(true|false))?\\s*;$";
+  // 段落并行执行时多个线程同时访问
+  private static Set<String> uploadParagraphSet = ConcurrentHashMap.newKeySet();
 
-  private static Set<String> uploadParagraphSet = new HashSet<>();
-
-  private static Map<String, CompletableFuture<InterpreterResult>> taskMap =
-      new ConcurrentHashMap<>();
-  private Session session;
+  private static Map<String, ParagraphTask> taskMap = new ConcurrentHashMap<>();
+  private SessionPool sessionPool;
+  private ThreadPoolExecutor queryExecutor;
+  // OUTFILE流水线导出的写线程，每个导出任务占用一个线程，导出任务数受queryExecutor限制
+  private ExecutorService exportExecutor;
+  // 并行写入AS STREAM导出的列文件，所有段落共享
+  private ExecutorService columnWriterExecutor;
+  // 生成实体压缩包时并行压缩各条目
+  private ThreadPoolExecutor zipExecutor;
+  private QueryResultCache queryResultCache;
 
   private Exception exception;
 
   private SimpleFileServer fileServer;
+  private GraphCache graphCache = null;
+  private GraphTreeStore graphTreeStore = null;
+  private ColumnCatalog columnCatalog = null;
 
   // 返回结果为单个表格的语句
   private static final List<SqlType> singleFormSqlType =
@@ -136,9 +275,13 @@ public class IginxInterpreter8 extends Interpreter {
   private static final String SCRIPTS = "SCRIPTS";
   private static final String STYLES = "STYLES";
   // 定义特殊操作符，按照show columns图形化命令结果
-  private static final String CMD_STARTER = ">"; // 命令级参数的首个字符 >graph.tree
   private static final String GRAPHICAL_RESULTS = ">graph.tree";
   private static final String PRINT_KEY_TIME = ">print.key.time";
+  // >downsample.lttb或>downsample.minmax，可用=N指定每列的目标点数
+  private static final String DOWNSAMPLE = ">downsample";
+  private static final String DOWNSAMPLE_POINTS = ">downsample.points";
+  // 标记结果表格已通过InterpreterContext.out流式输出，隐藏脚本需要为其设置字体
+  private static final String STREAMED_TABLE = "streamed.table";
 
   public IginxInterpreter8(Properties properties) {
     super(properties);
@@ -152,7 +295,8 @@ public class IginxInterpreter8 extends Interpreter {
     password = properties.getProperty(IGINX_PASSWORD, DEFAULT_PASSWORD).trim();
     timePrecision = properties.getProperty(IGINX_TIME_PRECISION, DEFAULT_TIME_PRECISION).trim();
     outfileDir = properties.getProperty(IGINX_OUTFILE_DIR, DEFAULT_OUTFILE_DIR).trim();
-    fetchSize = properties.getProperty(IGINX_FETCH_SIZE, DEFAULT_FETCH_SIZE).trim();
+    fetchSize =
+        Integer.parseInt(properties.getProperty(IGINX_FETCH_SIZE, DEFAULT_FETCH_SIZE).trim());
     outfileMaxNum =
         Integer.parseInt(
             properties.getProperty(IGINX_OUTFILE_MAX_NUM, DEFAULT_OUTFILE_MAX_NUM).trim());
@@ -171,6 +315,32 @@ public class IginxInterpreter8 extends Interpreter {
     uploadDirMaxSize =
         Long.parseLong(
             properties.getProperty(IGINX_UPLOAD_DIR_MAX_SIZE, DEFAULT_UPLOAD_DIR_MAX_SIZE).trim());
+    fileHttpThreads =
+        Integer.parseInt(
+            properties.getProperty(IGINX_FILE_HTTP_THREADS, DEFAULT_FILE_HTTP_THREADS).trim());
+    fileHttpQueueSize =
+        Integer.parseInt(
+            properties
+                .getProperty(IGINX_FILE_HTTP_QUEUE_SIZE, DEFAULT_FILE_HTTP_QUEUE_SIZE)
+                .trim());
+    fileHttpUploadThreads =
+        Integer.parseInt(
+            properties
+                .getProperty(IGINX_FILE_HTTP_UPLOAD_THREADS, DEFAULT_FILE_HTTP_UPLOAD_THREADS)
+                .trim());
+    fileHttpUploadQueueSize =
+        Integer.parseInt(
+            properties
+                .getProperty(IGINX_FILE_HTTP_UPLOAD_QUEUE_SIZE, DEFAULT_FILE_HTTP_UPLOAD_QUEUE_SIZE)
+                .trim());
+    fileHttpBacklog =
+        Integer.parseInt(
+            properties.getProperty(IGINX_FILE_HTTP_BACKLOG, DEFAULT_FILE_HTTP_BACKLOG).trim());
+    fileHttpVirtualThreads =
+        Boolean.parseBoolean(
+            properties
+                .getProperty(IGINX_FILE_HTTP_VIRTUAL_THREADS, DEFAULT_FILE_HTTP_VIRTUAL_THREADS)
+                .trim());
     noteFontSizeEnable =
         Boolean.parseBoolean(
             properties.getProperty(IGINX_NOTE_FONT_SIZE_ENABLE, DEFAULT_NOTE_FONT_SIZE_ENABLE));
@@ -180,22 +350,229 @@ public class IginxInterpreter8 extends Interpreter {
     graphTreeEnable =
         Boolean.parseBoolean(
             properties.getProperty(IGINX_GRAPH_TREE_ENABLE, DEFAULT_IGINX_GRAPH_TREE_ENABLE));
+    graphCacheSize =
+        Long.parseLong(
+            properties.getProperty(IGINX_GRAPH_CACHE_SIZE, DEFAULT_GRAPH_CACHE_SIZE).trim());
+    columnCatalogEnable =
+        Boolean.parseBoolean(
+            properties
+                .getProperty(IGINX_COLUMN_CATALOG_ENABLE, DEFAULT_COLUMN_CATALOG_ENABLE)
+                .trim());
+    columnCatalogRefreshInterval =
+        Long.parseLong(
+            properties
+                .getProperty(
+                    IGINX_COLUMN_CATALOG_REFRESH_INTERVAL, DEFAULT_COLUMN_CATALOG_REFRESH_INTERVAL)
+                .trim());
+    columnCatalogMinRefreshInterval =
+        Long.parseLong(
+            properties
+                .getProperty(
+                    IGINX_COLUMN_CATALOG_MIN_REFRESH_INTERVAL,
+                    DEFAULT_COLUMN_CATALOG_MIN_REFRESH_INTERVAL)
+                .trim());
+    columnCatalogTtl =
+        Long.parseLong(
+            properties.getProperty(IGINX_COLUMN_CATALOG_TTL, DEFAULT_COLUMN_CATALOG_TTL).trim());
+    graphTreePageSize =
+        Integer.parseInt(
+            properties
+                .getProperty(IGINX_GRAPH_TREE_PAGE_SIZE, DEFAULT_GRAPH_TREE_PAGE_SIZE)
+                .trim());
+    graphTreeMaxParagraphs =
+        Integer.parseInt(
+            properties
+                .getProperty(IGINX_GRAPH_TREE_MAX_PARAGRAPHS, DEFAULT_GRAPH_TREE_MAX_PARAGRAPHS)
+                .trim());
+    sessionPoolMinSize =
+        Integer.parseInt(
+            properties
+                .getProperty(IGINX_SESSION_POOL_MIN_SIZE, DEFAULT_SESSION_POOL_MIN_SIZE)
+                .trim());
+    sessionPoolMaxSize =
+        Integer.parseInt(
+            properties
+                .getProperty(IGINX_SESSION_POOL_MAX_SIZE, DEFAULT_SESSION_POOL_MAX_SIZE)
+                .trim());
+    sessionPoolIdleTimeout =
+        Long.parseLong(
+            properties
+                .getProperty(IGINX_SESSION_POOL_IDLE_TIMEOUT, DEFAULT_SESSION_POOL_IDLE_TIMEOUT)
+                .trim());
+    sessionPoolBorrowTimeout =
+        Long.parseLong(
+            properties
+                .getProperty(IGINX_SESSION_POOL_BORROW_TIMEOUT, DEFAULT_SESSION_POOL_BORROW_TIMEOUT)
+                .trim());
+    executorPoolSize =
+        Integer.parseInt(
+            properties.getProperty(IGINX_EXECUTOR_POOL_SIZE, DEFAULT_EXECUTOR_POOL_SIZE).trim());
+    executorQueueSize =
+        Integer.parseInt(
+            properties.getProperty(IGINX_EXECUTOR_QUEUE_SIZE, DEFAULT_EXECUTOR_QUEUE_SIZE).trim());
+    queryStreamingEnable =
+        Boolean.parseBoolean(
+            properties
+                .getProperty(IGINX_QUERY_STREAMING_ENABLE, DEFAULT_QUERY_STREAMING_ENABLE)
+                .trim());
+    queryMaxRows =
+        Long.parseLong(properties.getProperty(IGINX_QUERY_MAX_ROWS, DEFAULT_QUERY_MAX_ROWS).trim());
+    queryMaxSize =
+        Long.parseLong(properties.getProperty(IGINX_QUERY_MAX_SIZE, DEFAULT_QUERY_MAX_SIZE).trim());
+    resultSpillEnable =
+        Boolean.parseBoolean(
+            properties.getProperty(IGINX_RESULT_SPILL_ENABLE, DEFAULT_RESULT_SPILL_ENABLE).trim());
+    resultSpillRows =
+        Long.parseLong(
+            properties.getProperty(IGINX_RESULT_SPILL_ROWS, DEFAULT_RESULT_SPILL_ROWS).trim());
+    resultSpillSize =
+        Long.parseLong(
+            properties.getProperty(IGINX_RESULT_SPILL_SIZE, DEFAULT_RESULT_SPILL_SIZE).trim());
+    resultPreviewRows =
+        Integer.parseInt(
+            properties.getProperty(IGINX_RESULT_PREVIEW_ROWS, DEFAULT_RESULT_PREVIEW_ROWS).trim());
+    downsamplePoints =
+        Integer.parseInt(
+            properties.getProperty(IGINX_DOWNSAMPLE_POINTS, DEFAULT_DOWNSAMPLE_POINTS).trim());
+    queryCacheEnable =
+        Boolean.parseBoolean(
+            properties.getProperty(IGINX_QUERY_CACHE_ENABLE, DEFAULT_QUERY_CACHE_ENABLE).trim());
+    queryResultCache =
+        new QueryResultCache(
+            Integer.parseInt(
+                properties
+                    .getProperty(IGINX_QUERY_CACHE_MAX_ENTRIES, DEFAULT_QUERY_CACHE_MAX_ENTRIES)
+                    .trim()),
+            Long.parseLong(
+                    properties
+                        .getProperty(IGINX_QUERY_CACHE_MAX_SIZE, DEFAULT_QUERY_CACHE_MAX_SIZE)
+                        .trim())
+                * 1024
+                * 1024,
+            Long.parseLong(
+                    properties.getProperty(IGINX_QUERY_CACHE_TTL, DEFAULT_QUERY_CACHE_TTL).trim())
+                * 1000);
+    insertBatchEnable =
+        Boolean.parseBoolean(
+            properties.getProperty(IGINX_INSERT_BATCH_ENABLE, DEFAULT_INSERT_BATCH_ENABLE).trim());
+    insertBatchSize =
+        Integer.parseInt(
+            properties.getProperty(IGINX_INSERT_BATCH_SIZE, DEFAULT_INSERT_BATCH_SIZE).trim());
+    loadChunkSize =
+        Long.parseLong(
+            properties.getProperty(IGINX_LOAD_CHUNK_SIZE, DEFAULT_LOAD_CHUNK_SIZE).trim());
+    loadMaxInFlight =
+        Integer.parseInt(
+            properties.getProperty(IGINX_LOAD_MAX_INFLIGHT, DEFAULT_LOAD_MAX_INFLIGHT).trim());
+    outfilePipelineEnable =
+        Boolean.parseBoolean(
+            properties
+                .getProperty(IGINX_OUTFILE_PIPELINE_ENABLE, DEFAULT_OUTFILE_PIPELINE_ENABLE)
+                .trim());
+    outfilePipelineDepth =
+        Integer.parseInt(
+            properties
+                .getProperty(IGINX_OUTFILE_PIPELINE_DEPTH, DEFAULT_OUTFILE_PIPELINE_DEPTH)
+                .trim());
+    outfileWriterThreads =
+        Integer.parseInt(
+            properties
+                .getProperty(IGINX_OUTFILE_WRITER_THREADS, DEFAULT_OUTFILE_WRITER_THREADS)
+                .trim());
+    outfileZipLevel =
+        Integer.parseInt(
+            properties.getProperty(IGINX_OUTFILE_ZIP_LEVEL, DEFAULT_OUTFILE_ZIP_LEVEL).trim());
+    outfileZipMaterialize =
+        Boolean.parseBoolean(
+            properties
+                .getProperty(IGINX_OUTFILE_ZIP_MATERIALIZE, DEFAULT_OUTFILE_ZIP_MATERIALIZE)
+                .trim());
+    outfileZipThreads =
+        Integer.parseInt(
+            properties.getProperty(IGINX_OUTFILE_ZIP_THREADS, DEFAULT_OUTFILE_ZIP_THREADS).trim());
     localIpAddress = getLocalHostExactAddress();
     if (localIpAddress == null) {
       localIpAddress = "127.0.0.1";
     }
 
-    session = new Session(host, port, username, password);
+    // 段落在独立的有界线程池中执行，避免阻塞的Thrift调用占满JVM公共的ForkJoinPool
+    queryExecutor =
+        new ThreadPoolExecutor(
+            executorPoolSize,
+            executorPoolSize,
+            60L,
+            TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(executorQueueSize),
+            new NamedThreadFactory("iginx-query"),
+            new ThreadPoolExecutor.AbortPolicy());
+    queryExecutor.allowCoreThreadTimeOut(true);
+    exportExecutor = Executors.newCachedThreadPool(new NamedThreadFactory("iginx-export-writer"));
+    if (outfileZipMaterialize && outfileZipThreads > 1) {
+      zipExecutor =
+          new ThreadPoolExecutor(
+              outfileZipThreads,
+              outfileZipThreads,
+              60L,
+              TimeUnit.SECONDS,
+              new LinkedBlockingQueue<>(),
+              new NamedThreadFactory("iginx-zip"));
+      zipExecutor.allowCoreThreadTimeOut(true);
+    }
+    if (outfileWriterThreads > 1) {
+      columnWriterExecutor =
+          Executors.newFixedThreadPool(
+              outfileWriterThreads, new NamedThreadFactory("iginx-column-writer"));
+    }
+
+    sessionPool =
+        new SessionPool(
+            host,
+            port,
+            username,
+            password,
+            sessionPoolMinSize,
+            sessionPoolMaxSize,
+            sessionPoolIdleTimeout,
+            sessionPoolBorrowTimeout);
     try {
-      session.openSession();
+      sessionPool.init();
     } catch (SessionException e) {
       exception = e;
       System.out.println("Can not open session successfully.");
     }
+    if (columnCatalogEnable) {
+      columnCatalog =
+          new ColumnCatalog(
+              this::loadColumns,
+              columnCatalogRefreshInterval * 1000,
+              columnCatalogMinRefreshInterval * 1000);
+      columnCatalog.start();
+    }
 
     try {
       fileServer =
-          new SimpleFileServer(fileHttpPort, outfileDir, DEFAULT_UPLOAD_DIR, uploadDirMaxSize);
+          new SimpleFileServer(
+              fileHttpPort,
+              outfileDir,
+              DEFAULT_UPLOAD_DIR,
+              uploadDirMaxSize,
+              uploadFileMaxSize * 1024 * 1024 * 1024,
+              outfileZipLevel);
+      if (graphCacheSize > 0) {
+        graphCache = new GraphCache(outfileDir, graphCacheSize * 1024 * 1024);
+        fileServer.setGraphCache(graphCache);
+      }
+      if (graphTreePageSize > 0) {
+        graphTreeStore = new GraphTreeStore(graphTreeMaxParagraphs);
+        fileServer.setGraphTreeStore(graphTreeStore);
+      }
+      fileServer.configureExecutors(
+          fileHttpThreads,
+          fileHttpQueueSize,
+          fileHttpUploadThreads,
+          fileHttpUploadQueueSize,
+          fileHttpBacklog,
+          fileHttpVirtualThreads);
       fileServer.start();
       loadNGINXStaticFilesInfo();
     } catch (IOException e) {
@@ -205,16 +582,29 @@ public class IginxInterpreter8 extends Interpreter {
 
   @Override
   public void close() throws InterpreterException {
-    try {
-      if (session != null) {
-        session.closeSession();
-      }
-      if (fileServer != null) {
-        fileServer.stop();
-      }
-    } catch (SessionException e) {
-      exception = e;
-      System.out.println("Can not close session successfully.");
+    if (queryExecutor != null) {
+      queryExecutor.shutdownNow();
+    }
+    if (exportExecutor != null) {
+      exportExecutor.shutdownNow();
+    }
+    if (columnWriterExecutor != null) {
+      columnWriterExecutor.shutdownNow();
+    }
+    if (zipExecutor != null) {
+      zipExecutor.shutdownNow();
+    }
+    if (columnCatalog != null) {
+      columnCatalog.close();
+    }
+    if (sessionPool != null) {
+      sessionPool.close();
+    }
+    if (fileServer != null) {
+      fileServer.stop();
+    }
+    if (graphCache != null) {
+      graphCache.close();
     }
   }
 
@@ -225,14 +615,17 @@ public class IginxInterpreter8 extends Interpreter {
       return new InterpreterResult(InterpreterResult.Code.ERROR, exception.getMessage());
     }
 
-    String[] cmdList = parseMultiLinesSQL(st);
+    List<SqlStatement> statements = SqlLexer.split(st);
+    if (statements.isEmpty()) {
+      return new InterpreterResult(InterpreterResult.Code.SUCCESS);
+    }
 
-    if (hasMultiLoadData(cmdList)) {
+    if (hasMultiLoadData(statements)) {
       return new InterpreterResult(
           InterpreterResult.Code.ERROR,
           "Only one \"LOAD DATA\" statement can be executed at a time.");
     }
-    CompletableFuture<InterpreterResult> future = processSqlListAsync(cmdList, context);
+    CompletableFuture<InterpreterResult> future = processSqlListAsync(statements, context);
     InterpreterResult interpreterResult;
 
     try {
@@ -252,85 +645,264 @@ public class IginxInterpreter8 extends Interpreter {
    * @return CompletableFuture 通过CompletableFuture获取执行结果
    */
   private CompletableFuture<InterpreterResult> processSqlListAsync(
-      String[] sqlList, InterpreterContext context) {
+      List<SqlStatement> sqlList, InterpreterContext context) {
     String paragraphId = context.getParagraphId();
-    CompletableFuture<InterpreterResult> future = new CompletableFuture<>();
-    taskMap.put(paragraphId, future);
-
-    CompletableFuture.runAsync(
-        () -> {
-          InterpreterResult interpreterResult = null;
-          for (String cmd : sqlList) {
-            interpreterResult = processSql(cmd, context);
-            if (isSessionClosedError(interpreterResult)) {
-              if (reopenSession()) {
-                // 暂停，等待连接建立
-                interpreterResult = processSql(cmd, context);
-              } else {
-                interpreterResult.add(
-                    InterpreterResult.Type.TEXT,
-                    "Can not reopen session successfully, please check IGinX Server.");
-              }
-            }
-          }
-          addHideResult(interpreterResult, context);
-          future.complete(interpreterResult);
-        });
+    ParagraphTask task = new ParagraphTask(paragraphId);
+    CompletableFuture<InterpreterResult> future = task.getFuture();
+    taskMap.put(paragraphId, task);
+
+    try {
+      task.setWorker(
+          queryExecutor.submit(
+              () -> {
+                try {
+                  InterpreterResult interpreterResult = null;
+                  int i = 0;
+                  while (i < sqlList.size() && !task.isCancelled()) {
+                    // 连续的同前缀INSERT合并执行，其余语句逐条执行
+                    int runEnd = insertBatchEnable ? InsertBatcher.findRunEnd(sqlList, i) : i + 1;
+                    if (runEnd - i > 1) {
+                      interpreterResult =
+                          processInsertRun(sqlList.subList(i, runEnd), i, context, task);
+                    } else {
+                      interpreterResult =
+                          processSqlWithPooledSession(sqlList.get(i), context, task);
+                    }
+                    i = runEnd;
+                  }
+                  addHideResult(interpreterResult, context);
+                  future.complete(interpreterResult);
+                } catch (Throwable e) {
+                  future.completeExceptionally(e);
+                } finally {
+                  taskMap.remove(paragraphId, task);
+                }
+              }));
+    } catch (RejectedExecutionException e) {
+      taskMap.remove(paragraphId, task);
+      LOGGER.warn("query executor is saturated, reject paragraph {}", paragraphId);
+      future.complete(
+          new InterpreterResult(
+              InterpreterResult.Code.ERROR,
+              "Too many running paragraphs, the query queue ("
+                  + executorQueueSize
+                  + ") is full, please try again later."));
+    }
 
     return future;
   }
 
-  private InterpreterResult processSql(String cmd, InterpreterContext context) {
+  /**
+   * 将连续的同前缀INSERT按iginx.insert.batch.size合并为多值INSERT分批执行，某一批失败后继续执行后续批次，并以表格返回每批的执行结果
+   *
+   * @param run 连续的INSERT语句
+   * @param firstIndex run中第一条语句在段落中的下标
+   * @param context InterpreterContext上下文
+   * @param task 当前段落任务
+   * @return 每批的执行结果，任意一批失败时返回ERROR
+   */
+  private InterpreterResult processInsertRun(
+      List<SqlStatement> run, int firstIndex, InterpreterContext context, ParagraphTask task) {
+    List<InsertBatcher.Batch> batches = InsertBatcher.merge(run, firstIndex, insertBatchSize);
+    List<List<String>> report = new ArrayList<>();
+    report.add(Arrays.asList("batch", "statements", "status", "message"));
+    boolean failed = false;
+    for (int i = 0; i < batches.size(); i++) {
+      if (task.isCancelled()) {
+        break;
+      }
+      InsertBatcher.Batch batch = batches.get(i);
+      InterpreterResult batchResult =
+          processSqlWithPooledSession(batch.getStatement(), context, task);
+      boolean success = batchResult.code() == InterpreterResult.Code.SUCCESS;
+      failed |= !success;
+      String message = "";
+      if (batchResult.message() != null && !batchResult.message().isEmpty()) {
+        // 错误信息中的制表符和换行会破坏TABLE结构，替换为空格
+        message =
+            batchResult
+                .message()
+                .get(0)
+                .getData()
+                .replace('\t', ' ')
+                .replace('\r', ' ')
+                .replace('\n', ' ')
+                .trim();
+      }
+      report.add(
+          Arrays.asList(
+              String.valueOf(i + 1),
+              (batch.getFrom() + 1) + "-" + batch.getTo(),
+              success ? "SUCCESS" : "ERROR",
+              message));
+      if (!success) {
+        LOGGER.warn(
+            "insert batch {} (statements {}-{}) failed: {}",
+            i + 1,
+            batch.getFrom() + 1,
+            batch.getTo(),
+            message);
+      }
+    }
+    return new InterpreterResult(
+        failed ? InterpreterResult.Code.ERROR : InterpreterResult.Code.SUCCESS,
+        InterpreterResult.Type.TABLE,
+        buildSingleFormResult(report));
+  }
+
+  /**
+   * 从连接池借出Session执行单条语句，执行完毕后归还。若连接已断开，则重建该连接并重试一次
+   *
+   * @param cmd sql语句
+   * @param context InterpreterContext上下文
+   * @param task 当前段落任务
+   * @return 执行结果
+   */
+  private InterpreterResult processSqlWithPooledSession(
+      SqlStatement cmd, InterpreterContext context, ParagraphTask task) {
+    Session session;
+    try {
+      session = sessionPool.borrow();
+    } catch (SessionException e) {
+      return new InterpreterResult(InterpreterResult.Code.ERROR, e.getMessage());
+    }
+
+    InterpreterResult interpreterResult = processSql(cmd, context, session, task);
+    if (task.isCancelled()) {
+      // 取消时工作线程可能在Thrift调用中被中断，连接状态不可信，重建该连接
+      sessionPool.invalidate(session);
+      return interpreterResult;
+    }
+    if (!isSessionClosedError(interpreterResult)) {
+      sessionPool.release(session);
+      return interpreterResult;
+    }
+
+    if (!sessionPool.invalidate(session)) {
+      interpreterResult.add(
+          InterpreterResult.Type.TEXT,
+          "Can not reopen session successfully, please check IGinX Server.");
+      return interpreterResult;
+    }
+    try {
+      session = sessionPool.borrow();
+    } catch (SessionException e) {
+      return new InterpreterResult(InterpreterResult.Code.ERROR, e.getMessage());
+    }
+    interpreterResult = processSql(cmd, context, session, task);
+    if (task.isCancelled() || isSessionClosedError(interpreterResult)) {
+      sessionPool.invalidate(session);
+    } else {
+      sessionPool.release(session);
+    }
+    return interpreterResult;
+  }
+
+  private InterpreterResult processSql(
+      SqlStatement cmd, InterpreterContext context, Session session, ParagraphTask task) {
     String sql = setCmdConfig(cmd, context);
+    boolean readOnly = cmd.isReadOnly();
+    boolean explain = cmd.getType() == SqlStatement.Type.EXPLAIN;
+    if (!readOnly) {
+      invalidateCaches();
+    }
     try {
       // 如果sql中有outfile关键字，则进行特殊处理，将结果下载到zeppelin所在的服务器上，并在表单中返回下载链接
-      String outfileRegex =
-          "(?i)\\bINTO\\s+OUTFILE\\s+\"(.*?)\"\\s+AS\\s+STREAM(?:\\s+showimg\\s+(true|false))?\\s*;$";
-      Pattern pattern = Pattern.compile(outfileRegex);
-      Matcher matcher = pattern.matcher(sql.toLowerCase());
-      if (matcher.find()) {
-        if (matcher.group(2) != null)
-          if (matcher.group(2).equals("true"))
-            return processOutfileSql(sql, matcher.group(1), true);
-          else return processOutfileSql(sql, matcher.group(1), false);
-        else return processOutfileSql(sql, matcher.group(1), false);
+      if (cmd.getType() == SqlStatement.Type.OUTFILE) {
+        return processOutfileSql(cmd, session, task);
       }
-      if (isLoadDataFromCsv(sql.toLowerCase())) {
-        return processLoadCsv(sql, context);
-      } else if (isCreateFunction(sql.toLowerCase())) {
-        return processCreateFunction(sql);
+      if (cmd.getType() == SqlStatement.Type.LOAD_DATA) {
+        return processLoadCsv(sql, context, session, task);
+      } else if (cmd.getType() == SqlStatement.Type.CREATE_FUNCTION) {
+        return processCreateFunction(sql, session);
+      } else if ((queryStreamingEnable || getCmdConfig(sql, context, DOWNSAMPLE) != null)
+          && isStreamingQuery(cmd, context)) {
+        // 降采样在流式读取结果时进行
+        return processQueryStreaming(sql, context, session, task);
       }
 
-      SessionExecuteSqlResult sqlResult = session.executeSql(sql);
+      boolean keyTimeEnable = Boolean.parseBoolean(getCmdConfig(sql, context, PRINT_KEY_TIME));
+      // 只读查询先查缓存，缓存中只保存单表格结果
+      String cacheKey = null;
+      long cacheGeneration = 0;
+      QueryResultCache.CachedResult cachedResult = null;
+      if (queryCacheEnable && readOnly && !explain) {
+        cacheKey = QueryResultCache.buildKey(sql, keyTimeEnable, timePrecision);
+        // 在执行前记录代数，执行期间有写操作时结果不写入缓存
+        cacheGeneration = queryResultCache.getGeneration();
+        cachedResult = queryResultCache.get(cacheKey);
+      }
 
-      String parseErrorMsg = sqlResult.getParseErrorMsg();
-      if (parseErrorMsg != null && !parseErrorMsg.equals("")) {
-        return new InterpreterResult(InterpreterResult.Code.ERROR, sqlResult.getParseErrorMsg());
+      // SHOW COLUMNS优先在列目录的快照中执行，快照过期时仍发给IGinX
+      List<List<String>> localColumns = cachedResult == null ? showColumnsLocally(cmd) : null;
+
+      SessionExecuteSqlResult sqlResult = null;
+      SqlType sqlType;
+      List<List<String>> queryList = null;
+      if (cachedResult != null) {
+        sqlType = cachedResult.getSqlType();
+        queryList = cachedResult.getRows();
+      } else if (localColumns != null) {
+        sqlType = SqlType.ShowColumns;
+        queryList = Collections.unmodifiableList(localColumns);
+      } else {
+        sqlResult = session.executeSql(sql);
+        String parseErrorMsg = sqlResult.getParseErrorMsg();
+        if (parseErrorMsg != null && !parseErrorMsg.equals("")) {
+          return new InterpreterResult(InterpreterResult.Code.ERROR, sqlResult.getParseErrorMsg());
+        }
+        sqlType = sqlResult.getSqlType();
       }
 
       InterpreterResult interpreterResult = new InterpreterResult(InterpreterResult.Code.SUCCESS);
       String msg;
-      boolean keyTimeEnable = Boolean.parseBoolean(getCmdConfig(sql, context, PRINT_KEY_TIME));
-      if (singleFormSqlType.contains(sqlResult.getSqlType()) && !sql.startsWith("explain")) {
-        List<List<String>> queryList =
-            sqlResult.getResultInList(
-                keyTimeEnable, FormatUtils.DEFAULT_TIME_FORMAT, timePrecision);
-        if (SqlType.ShowColumns == sqlResult.getSqlType()
+      if (singleFormSqlType.contains(sqlType) && !explain) {
+        if (queryList == null) {
+          queryList =
+              Collections.unmodifiableList(
+                  sqlResult.getResultInList(
+                      keyTimeEnable, FormatUtils.DEFAULT_TIME_FORMAT, timePrecision));
+          if (cacheKey != null) {
+            queryResultCache.put(cacheKey, cacheGeneration, sqlType, queryList);
+          }
+        }
+        if (SqlType.ShowColumns == sqlType
             || Boolean.parseBoolean(getCmdConfig(sql, context, GRAPHICAL_RESULTS))) {
           interpreterResult.add(
               new InterpreterResultMessage(
                   InterpreterResult.Type.HTML,
                   buildTreeForShowColumns(queryList, context.getParagraphId())));
         }
-        msg = buildSingleFormResult(queryList);
-        interpreterResult.add(InterpreterResult.Type.TABLE, msg);
-      } else if (sqlResult.getSqlType() == SqlType.Query && sql.startsWith("explain")) {
+        if (resultSpillEnable && exceedSpillThreshold(queryList)) {
+          // 结果过大时只展示前几行，完整结果写入CSV文件并提供下载链接
+          File spillFile = newSpillFile(context);
+          boolean written = false;
+          try (CsvResultWriter csvWriter = new CsvResultWriter(spillFile)) {
+            for (List<String> row : queryList) {
+              csvWriter.writeRow(row);
+            }
+            written = true;
+          } finally {
+            if (!written) {
+              FileUtils.deleteQuietly(spillFile.getParentFile());
+            }
+          }
+          msg =
+              buildSingleFormResult(
+                  queryList.subList(0, Math.min(queryList.size(), resultPreviewRows + 1)));
+          interpreterResult.add(InterpreterResult.Type.TABLE, msg);
+          addSpillResult(interpreterResult, spillFile, queryList.size() - 1);
+        } else {
+          msg = buildSingleFormResult(queryList);
+          interpreterResult.add(InterpreterResult.Type.TABLE, msg);
+        }
+      } else if (sqlType == SqlType.Query && explain) {
         msg =
             buildExplainResult(
                 sqlResult.getResultInList(
                     keyTimeEnable, FormatUtils.DEFAULT_TIME_FORMAT, timePrecision));
         interpreterResult.add(InterpreterResult.Type.TABLE, msg);
-      } else if (sqlResult.getSqlType() == SqlType.ShowClusterInfo) {
+      } else if (sqlType == SqlType.ShowClusterInfo) {
         buildClusterInfoResult(
             interpreterResult,
             sqlResult.getResultInList(
@@ -348,7 +920,90 @@ public class IginxInterpreter8 extends Interpreter {
       return new InterpreterResult(
           InterpreterResult.Code.ERROR,
           "encounter error when executing sql statement:\n" + e.getMessage());
+    } finally {
+      // 写操作结束后再清理一次，代数随之变化，执行期间开始的只读查询不会缓存旧结果
+      if (!readOnly) {
+        invalidateCaches();
+        markCatalogDirty(cmd);
+      }
+    }
+  }
+
+  /** 执行写操作时清空查询结果缓存 */
+  private void invalidateCaches() {
+    if (queryResultCache != null) {
+      queryResultCache.invalidateAll();
+    }
+  }
+
+  /** 写操作执行后标记列目录需要刷新，INSERT只刷新写入的路径 */
+  private void markCatalogDirty(SqlStatement cmd) {
+    if (columnCatalog == null) {
+      return;
+    }
+    if (cmd.getType() == SqlStatement.Type.INSERT) {
+      columnCatalog.markDirty(cmd.getInsertTarget());
+    } else {
+      columnCatalog.markAllDirty();
+    }
+  }
+
+  /**
+   * 在列目录的快照中执行只带路径的SHOW COLUMNS语句
+   *
+   * @return 不是这种语句、或写操作和TTL使快照过期时返回null
+   */
+  private List<List<String>> showColumnsLocally(SqlStatement cmd) {
+    if (columnCatalog == null || columnCatalogTtl <= 0) {
+      return null;
+    }
+    List<String> paths = cmd.getShowColumnsPaths();
+    if (paths == null) {
+      return null;
+    }
+    ColumnCatalog.Snapshot snapshot = columnCatalog.getFreshSnapshot(columnCatalogTtl * 1000);
+    if (snapshot == null) {
+      return null;
+    }
+    List<PathPattern> patterns = new ArrayList<>(paths.size());
+    for (String path : paths) {
+      patterns.add(PathPattern.compile(path));
+    }
+    LOGGER.debug("show columns {} from column catalog version {}", paths, snapshot.getVersion());
+    return snapshot.select(patterns);
+  }
+
+  /**
+   * 列目录的数据来源，使用连接池中的Session执行SHOW COLUMNS
+   *
+   * @param prefix 为null时读取全部列
+   */
+  private List<List<String>> loadColumns(String prefix) throws SessionException {
+    Session session = sessionPool.borrow();
+    boolean success = false;
+    try {
+      SessionExecuteSqlResult result =
+          session.executeSql(prefix == null ? "show columns;" : "show columns " + prefix + ".*;");
+      List<List<String>> rows =
+          result.getResultInList(false, FormatUtils.DEFAULT_TIME_FORMAT, timePrecision);
+      success = true;
+      return rows;
+    } finally {
+      if (success) {
+        sessionPool.release(session);
+      } else {
+        sessionPool.invalidate(session);
+      }
+    }
+  }
+
+  @Override
+  public List<InterpreterCompletion> completion(
+      String buf, int cursor, InterpreterContext interpreterContext) {
+    if (columnCatalog == null) {
+      return Collections.emptyList();
     }
+    return columnCatalog.complete(buf, cursor, COMPLETION_LIMIT);
   }
 
   /**
@@ -364,43 +1019,231 @@ public class IginxInterpreter8 extends Interpreter {
             row -> {
               MultiwayTree.addTreeNodeFromString(tree, row.get(0));
             });
-    String htmlTemplate = "static/highcharts/tree.html";
-    try (InputStream inputStream =
-        IginxInterpreter8.class.getClassLoader().getResourceAsStream(htmlTemplate)) {
-      BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-      StringBuilder content = new StringBuilder();
-      String line;
-      while ((line = reader.readLine()) != null) {
-        content.append(line).append("\n");
-      }
-      List<HighchartsTreeNode> nodeList = new ArrayList<>();
-      int depth = tree.traverseToHighchartsTreeNodes(tree.getRoot(), nodeList);
-
-      String jsonString = JSON.toJSONString(nodeList);
-      String html =
-          content
-              .toString()
-              .replace("PARAGRAPH_ID", paragraphId)
-              .replace("NODE_LIST", jsonString)
-              .replace("TREE_DEPTH", String.valueOf(depth))
-              .replace("TREE_ENABLE", String.valueOf(graphTreeEnable));
-      String fileName = paragraphId + "_tree.html";
-      // 写入文件服务器paragraphID_tree.html
-      String targetPath = outfileDir + "/graphs/tree/" + fileName;
-      FileUtil.writeFile(html, targetPath);
-      return html;
+    HtmlTemplate template =
+        HtmlTemplate.fromResource(
+            "static/highcharts/tree.html",
+            PARAGRAPH_ID,
+            "NODE_LIST",
+            "TREE_DEPTH",
+            "TREE_ENABLE",
+            "LAZY_ENABLE",
+            "SUBTREE_URL",
+            "PAGE_SIZE");
+    // 节点较多时只输出第一层的第一页，其余子节点由页面展开时向文件服务器请求
+    boolean lazy = graphTreeStore != null && tree.getNodeCount() > graphTreePageSize;
+    if (lazy) {
+      graphTreeStore.put(paragraphId, tree);
+    }
+    // StringBuilderWriter不加锁，按需扩容，只按较小的节点数预分配
+    long nodes = lazy ? graphTreePageSize + 2L : tree.getNodeCount() + 1L;
+    StringBuilderWriter writer =
+        new StringBuilderWriter(template.getLiteralLength() + (int) Math.min(nodes * 96, 1 << 20));
+    try {
+      // 节点JSON在模板的NODE_LIST处直接写出，不生成节点列表和JSON字符串
+      template.render(
+          writer,
+          paragraphId,
+          (HtmlTemplate.Fragment) out -> writeTreeNodes(tree, lazy, out),
+          String.valueOf(tree.getDepth()),
+          String.valueOf(graphTreeEnable),
+          String.valueOf(lazy),
+          ":" + fileHttpPort + SimpleFileServer.PREFIX_SUBTREE,
+          String.valueOf(graphTreePageSize));
     } catch (IOException e) {
       LOGGER.warn("load show columns to tree error", e);
+      return "";
+    }
+    String html = writer.toString();
+    // 只编码一次，缓存和磁盘共用同一份字节
+    byte[] content = html.getBytes(StandardCharsets.UTF_8);
+    String fileName = paragraphId + "_tree.html";
+    // 写入文件服务器paragraphID_tree.html
+    if (graphCache != null) {
+      graphCache.put(SimpleFileServer.PREFIX_GRAPH + "/tree/" + fileName, content);
+    } else {
+      FileUtil.writeFileWithGzip(content, outfileDir + "/graphs/tree/" + fileName);
+    }
+    return html;
+  }
+
+  /** 以Highcharts节点的JSON数组写出树，按需加载时只写出根节点和第一层的第一页 */
+  private void writeTreeNodes(MultiwayTree tree, boolean lazy, Writer out) throws IOException {
+    TreeNode root = tree.getRoot();
+    if (!lazy) {
+      tree.writeHighchartsTreeNodes(root, out);
+      return;
+    }
+    out.write('[');
+    HighchartsTreeNode.writeJson(out, root.getPath(), root.getValue(), root.getPath(), 0, null);
+    for (HighchartsTreeNode node :
+        MultiwayTree.childrenPage(root, root.getPath(), 0, 0, graphTreePageSize)) {
+      out.write(',');
+      node.writeJson(out);
+    }
+    out.write(']');
+  }
+
+  /** 只有普通select语句可以流式输出，explain、show columns等仍需要完整结果来构建表格或树状图 */
+  private boolean isStreamingQuery(SqlStatement cmd, InterpreterContext context) {
+    return cmd.getType() == SqlStatement.Type.QUERY
+        && !Boolean.parseBoolean(getCmdConfig(cmd.getSql(), context, GRAPHICAL_RESULTS));
+  }
+
+  /**
+   * 流式执行查询：使用iginx.fetch.size分批读取结果，逐批格式化后直接写入InterpreterContext.out，
+   * 超过iginx.query.max.rows行或iginx.query.max.size(MB)后停止读取
+   *
+   * @param sql 查询语句
+   * @param context InterpreterContext上下文
+   * @param session 从连接池借出的Session
+   * @param task 当前段落任务
+   * @return 执行结果，表格已写入context.out，此处只包含截断提示
+   */
+  private InterpreterResult processQueryStreaming(
+      String sql, InterpreterContext context, Session session, ParagraphTask task)
+      throws SessionException, IOException {
+    boolean keyTimeEnable = Boolean.parseBoolean(getCmdConfig(sql, context, PRINT_KEY_TIME));
+    String downsample = getCmdConfig(sql, context, DOWNSAMPLE);
+    String points = getCmdConfig(sql, context, DOWNSAMPLE_POINTS);
+    clearCmdConfig(context);
+    QueryResultStreamer streamer =
+        new QueryResultStreamer(
+            fetchSize, queryMaxRows, queryMaxSize * 1024 * 1024, keyTimeEnable, timePrecision);
+    File spillFile = null;
+    if (downsample != null) {
+      // 完整结果写入CSV文件，通过文件服务器下载
+      spillFile = newSpillFile(context);
+      streamer.enableDownsample(
+          Downsampler.Method.valueOf(downsample), Integer.parseInt(points), spillFile);
+    } else if (resultSpillEnable) {
+      spillFile = newSpillFile(context);
+      streamer.enableSpill(
+          spillFile, resultSpillRows, resultSpillSize * 1024 * 1024, resultPreviewRows);
+    }
+    // 完整结果的CSV文件提供下载后由registerDownloadDir统一清理，未提供下载时（结果为空、未超过阈值或点数、取消或出错）在此删除
+    boolean downloadable = false;
+    try {
+      QueryDataSet dataSet = session.executeQuery(sql, fetchSize);
+      QueryResultStreamer.StreamSummary summary;
+      try {
+        summary = streamer.stream(dataSet, context.out, task);
+      } finally {
+        dataSet.close();
+      }
+
+      InterpreterResult interpreterResult = new InterpreterResult(InterpreterResult.Code.SUCCESS);
+      if (summary.getRows() == 0 && summary.getBytes() == 0 && !summary.isTruncated()) {
+        return interpreterResult;
+      }
+      context.getConfig().put(STREAMED_TABLE, "true");
+      if (summary.isDownsampled()) {
+        interpreterResult.add(
+            InterpreterResult.Type.TEXT,
+            "The result has "
+                + summary.getRows()
+                + " row(s), downsampled to "
+                + summary.getDisplayedRows()
+                + " row(s) by "
+                + downsample
+                + " for charts. Download the full result below.");
+        addDownloadResult(interpreterResult, spillFile);
+        downloadable = true;
+      } else if (summary.isSpilled()) {
+        addSpillResult(interpreterResult, spillFile, summary.getRows());
+        downloadable = true;
+      } else if (summary.isTruncated()) {
+        interpreterResult.add(
+            InterpreterResult.Type.TEXT,
+            "Result truncated: only the first "
+                + summary.getRows()
+                + " row(s) are displayed, limited by "
+                + IGINX_QUERY_MAX_ROWS
+                + "/"
+                + IGINX_QUERY_MAX_SIZE
+                + ".");
+      }
+      return interpreterResult;
+    } finally {
+      if (spillFile != null && !downloadable) {
+        FileUtils.deleteQuietly(spillFile.getParentFile());
+      }
     }
-    return "";
   }
 
-  private static boolean isLoadDataFromCsv(String sql) {
-    return sql.startsWith("load data from infile ") && sql.contains("as csv");
+  /** 判断单表格结果是否超过落盘阈值，首行为表头 */
+  private boolean exceedSpillThreshold(List<List<String>> queryList) {
+    if (resultSpillRows > 0 && queryList.size() - 1 > resultSpillRows) {
+      return true;
+    }
+    if (resultSpillSize <= 0) {
+      return false;
+    }
+    long maxBytes = resultSpillSize * 1024 * 1024;
+    long bytes = 0;
+    for (List<String> row : queryList) {
+      for (String val : row) {
+        bytes += val.length() + 1;
+      }
+      if (bytes > maxBytes) {
+        return true;
+      }
+    }
+    return false;
   }
 
-  private static boolean isCreateFunction(String sql) {
-    return sql.startsWith("create") && sql.contains("function");
+  /** 落盘文件放在outfile目录下单独的文件夹中，与OUTFILE导出的文件一起按数量和大小清理。文件夹名带随机后缀，同一秒内执行的多条语句不会写到同一个文件 */
+  private File newSpillFile(InterpreterContext context) {
+    String dateDir =
+        new Date().toString().replace(" ", "-").replace(":", "-")
+            + "-"
+            + context.getParagraphId()
+            + "-"
+            + UUID.randomUUID().toString().substring(0, 8);
+    return Paths.get(outfileDir, dateDir, "result.csv").toFile();
+  }
+
+  /**
+   * 在结果中增加落盘提示和完整结果的下载链接
+   *
+   * @param interpreterResult 执行结果
+   * @param spillFile 完整结果的CSV文件
+   * @param totalRows 结果总行数
+   */
+  private void addSpillResult(InterpreterResult interpreterResult, File spillFile, long totalRows)
+      throws IOException {
+    interpreterResult.add(
+        InterpreterResult.Type.TEXT,
+        "The result has "
+            + totalRows
+            + " row(s), only the first "
+            + Math.min(totalRows, resultPreviewRows)
+            + " row(s) are displayed. Download the full result below.");
+    addDownloadResult(interpreterResult, spillFile);
+  }
+
+  /** 在结果中增加完整结果CSV文件的下载链接 */
+  private void addDownloadResult(InterpreterResult interpreterResult, File spillFile)
+      throws IOException {
+    File spillDir = spillFile.getParentFile();
+    registerDownloadDir(spillDir.getPath());
+    String downloadLink = "<a href=\"%s\" download=\"%s\">点击下载</a>";
+    String msg =
+        "文件名"
+            + TAB
+            + "下载链接"
+            + NEWLINE
+            + spillFile.getName()
+            + TAB
+            + String.format(
+                downloadLink,
+                getDownloadHttpPrefix() + Paths.get(spillDir.getName(), spillFile.getName()),
+                spillFile.getName())
+            + NEWLINE;
+    interpreterResult.add(InterpreterResult.Type.TABLE, msg);
+  }
+
+  private String getDownloadHttpPrefix() {
+    return "http://" + localIpAddress + ":" + fileHttpPort + SimpleFileServer.PREFIX + "/";
   }
 
   /**
@@ -410,36 +1253,28 @@ public class IginxInterpreter8 extends Interpreter {
    * @throws SessionException
    * @throws IOException
    */
-  private InterpreterResult processLoadCsv(String sql, InterpreterContext context)
+  private InterpreterResult processLoadCsv(
+      String sql, InterpreterContext context, Session session, ParagraphTask task)
       throws SessionException, IOException {
     String msg;
     InterpreterResult interpreterResult;
     String uploadParagraphKey = context.getParagraphId() + "_UPLOAD_FILE";
     /* response upload file form, user will rerun paragraph when upload finished. */
     LOGGER.info("+++++++Id={}, paragraphId={}", context.getNoteId(), uploadParagraphKey);
-    if (!uploadParagraphSet.contains(uploadParagraphKey)) {
-      try (InputStream inputStream =
-              IginxInterpreter8.class.getClassLoader().getResourceAsStream("uploadForm.html");
-          BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
-        StringBuilder content = new StringBuilder();
-        String line;
-        while ((line = reader.readLine()) != null) {
-          content.append(line).append("\n");
-        }
-        String html =
-            content
-                .toString()
-                .replace("UPLOAD_URL", ":" + fileHttpPort + SimpleFileServer.PREFIX_UPLOAD)
-                .replace("PARAGRAPH_ID_VALUE", context.getParagraphId())
-                .replace("NOTEBOOK_ID_VALUE", context.getNoteId());
-        interpreterResult = new InterpreterResult(InterpreterResult.Code.SUCCESS);
-        interpreterResult.add(new InterpreterResultMessage(InterpreterResult.Type.HTML, html));
-        uploadParagraphSet.add(uploadParagraphKey);
-        return interpreterResult;
-      } catch (IOException e) {
-        LOGGER.error("load html error", e);
-      }
-      return new InterpreterResult(InterpreterResult.Code.ERROR);
+    // add成功表示首次执行，由同一次调用完成检查和登记，并行执行的同一段落只有一个会显示上传表单
+    if (uploadParagraphSet.add(uploadParagraphKey)) {
+      String html =
+          FileUtil.renderingHtml(
+              "uploadForm.html",
+              "UPLOAD_URL",
+              ":" + fileHttpPort + SimpleFileServer.PREFIX_UPLOAD,
+              "PARAGRAPH_ID_VALUE",
+              context.getParagraphId(),
+              "NOTEBOOK_ID_VALUE",
+              context.getNoteId());
+      interpreterResult = new InterpreterResult(InterpreterResult.Code.SUCCESS);
+      interpreterResult.add(new InterpreterResultMessage(InterpreterResult.Type.HTML, html));
+      return interpreterResult;
     }
 
     try {
@@ -483,13 +1318,10 @@ public class IginxInterpreter8 extends Interpreter {
                 + "GB.");
       }
 
-      List<String> columns = null;
-      long recordsNum = 0;
-      byte[] bytes = FileUtils.readFileToByteArray(file);
-      ByteBuffer csvFile = ByteBuffer.wrap(bytes);
-      Pair<List<String>, Long> pair = session.executeLoadCSV(sql, csvFile);
-      columns = pair.k;
-      recordsNum = pair.v;
+      boolean hasHeader = lowerCaseStr.contains(" skipping header");
+      Pair<List<String>, Long> pair = loadCsvInChunks(sql, file, hasHeader, session, task);
+      List<String> columns = pair.k;
+      long recordsNum = pair.v;
 
       msg = "Successfully write " + recordsNum + " record(s) to: " + columns;
       interpreterResult = new InterpreterResult(InterpreterResult.Code.SUCCESS);
@@ -500,6 +1332,97 @@ public class IginxInterpreter8 extends Interpreter {
     }
   }
 
+  /**
+   * 按iginx.load.chunk.size(MB)将CSV文件切分为以完整记录结尾的块逐块导入，文件带表头时每块都重新带上表头。
+   * 最多有iginx.load.max.inflight块同时导入，并行导入时每块使用从连接池借出的Session
+   *
+   * @param sql 替换为服务器路径后的load data语句
+   * @param file CSV文件
+   * @param hasHeader 语句是否包含SKIPPING HEADER
+   * @param session 当前语句的Session，串行导入时使用
+   * @param task 当前段落任务，每块开始前检查是否已被取消
+   * @return 导入的列以及所有块的记录数之和
+   */
+  private Pair<List<String>, Long> loadCsvInChunks(
+      String sql, File file, boolean hasHeader, Session session, ParagraphTask task)
+      throws SessionException, IOException {
+    int chunkSize = (int) Math.min(Integer.MAX_VALUE / 2, Math.max(1, loadChunkSize) * 1024 * 1024);
+    Pair<List<String>, Long> total = new Pair<>(new ArrayList<>(), 0L);
+    ExecutorService loadExecutor = null;
+    try (CsvChunkReader reader = new CsvChunkReader(file, chunkSize, hasHeader)) {
+      ByteBuffer chunk;
+      if (loadMaxInFlight <= 1) {
+        while ((chunk = reader.nextChunk()) != null) {
+          task.checkCancelled();
+          addLoadedChunk(total, session.executeLoadCSV(sql, chunk));
+        }
+        return total;
+      }
+
+      loadExecutor =
+          Executors.newFixedThreadPool(loadMaxInFlight, new NamedThreadFactory("iginx-load"));
+      Deque<Future<Pair<List<String>, Long>>> pending = new ArrayDeque<>();
+      long finishedChunks = 0;
+      while ((chunk = reader.nextChunk()) != null) {
+        task.checkCancelled();
+        if (pending.size() >= loadMaxInFlight) {
+          waitLoadedChunk(total, pending.poll(), ++finishedChunks);
+        }
+        ByteBuffer data = chunk;
+        pending.add(loadExecutor.submit(() -> loadChunkWithPooledSession(sql, data)));
+      }
+      while (!pending.isEmpty()) {
+        waitLoadedChunk(total, pending.poll(), ++finishedChunks);
+      }
+      return total;
+    } finally {
+      if (loadExecutor != null) {
+        loadExecutor.shutdownNow();
+      }
+    }
+  }
+
+  private Pair<List<String>, Long> loadChunkWithPooledSession(String sql, ByteBuffer chunk)
+      throws SessionException {
+    Session session = sessionPool.borrow();
+    try {
+      Pair<List<String>, Long> pair = session.executeLoadCSV(sql, chunk);
+      sessionPool.release(session);
+      return pair;
+    } catch (SessionException | RuntimeException e) {
+      sessionPool.invalidate(session);
+      throw e;
+    }
+  }
+
+  private static void waitLoadedChunk(
+      Pair<List<String>, Long> total, Future<Pair<List<String>, Long>> future, long chunkIndex)
+      throws SessionException {
+    try {
+      addLoadedChunk(total, future.get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException("任务被取消");
+    } catch (ExecutionException e) {
+      throw new SessionException(
+          "Failed to load chunk "
+              + chunkIndex
+              + " after writing "
+              + total.v
+              + " record(s): "
+              + e.getCause().getMessage(),
+          e.getCause());
+    }
+  }
+
+  private static void addLoadedChunk(
+      Pair<List<String>, Long> total, Pair<List<String>, Long> loaded) {
+    if (total.k.isEmpty() && loaded.k != null) {
+      total.k = loaded.k;
+    }
+    total.v += loaded.v;
+  }
+
   /** replace user local path by absolute path on server */
   private String convertPath(String inputPath, String sql) throws IOException {
     String path;
@@ -522,7 +1445,7 @@ public class IginxInterpreter8 extends Interpreter {
     return path;
   }
 
-  private InterpreterResult processCreateFunction(String sql) {
+  private InterpreterResult processCreateFunction(String sql, Session session) {
     String msg;
     InterpreterResult interpreterResult;
 
@@ -551,71 +1474,84 @@ public class IginxInterpreter8 extends Interpreter {
   /**
    * 处理带有outfile关键字的sql语句，将结果下载到zeppelin所在的服务器上，并在表单中返回下载链接
    *
-   * @param sql 带有outfile关键字的sql语句
-   * @param originOutfilePath 原始的outfile路径
-   * @param showimg
+   * @param cmd OUTFILE语句，包含词法分析时记录的路径位置和showimg参数
+   * @param session 从连接池借出的Session
+   * @param task 当前段落任务，取消时删除未导出完成的文件夹
    * @return InterpreterResult
    * @throws SessionException
    * @throws IOException
    */
-  private InterpreterResult processOutfileSql(String sql, String originOutfilePath, Boolean showimg)
+  private InterpreterResult processOutfileSql(SqlStatement cmd, Session session, ParagraphTask task)
       throws SessionException, IOException {
+    boolean showimg = cmd.isShowImg();
+
+    // 根据当前时间生成outfile的文件夹名，将文件下载到此处。
+    // 与落盘文件一样加随机后缀，同一秒内并行导出的段落各自使用独立的文件夹；
+    // createDirectory在文件夹已存在时抛出异常，保证文件夹只属于当前段落，失败时可以整体删除
+    String dateDir =
+        new Date().toString().replace(" ", "-").replace(":", "-")
+            + "-"
+            + UUID.randomUUID().toString().substring(0, 8);
+    Files.createDirectories(Paths.get(outfileDir));
+    File outfileFolder = Files.createDirectory(Paths.get(outfileDir, dateDir)).toFile();
+    String outfileDirPath = outfileFolder.getPath();
+
+    // 替换sql中的outfile路径为Zeppelin在服务端指定的路径，单引号和双引号的路径都按词法分析时记录的位置替换
+    String sql = cmd.replaceOutfilePath(outfileDirPath);
+
+    // 导出未完成时（取消、中断或出错）删除已写入的部分文件
+    boolean finished = false;
+    String[] fileNames;
+    String zipName = ZipStreamer.ALL_FILE_ZIP;
+    boolean hasMultipleFiles;
+    try {
+      task.checkCancelled();
+      QueryDataSet res = session.executeQuery(sql);
+      processExportByteStream(res, task);
 
-    // 根据当前年月日时分秒毫秒生成outfile的文件夹名，将文件下载到此处
-    String dateDir = new Date().toString().replace(" ", "-").replace(":", "-");
-    String outfileDirPath = Paths.get(outfileDir, dateDir).toString();
-    File outfileFolder = new File(outfileDirPath);
-    if (!outfileFolder.exists()) {
-      outfileFolder.mkdirs();
-    }
-
-    if (!outfileFolder.isDirectory()) {
-      throw new IOException(String.format("Path %s is supposed to be a dir.", outfileDirPath));
-    }
-
-    // 替换sql中最后一个outfile关键词，替换文件路径为Zeppelin在服务端指定的路径
-    Pattern pattern = Pattern.compile(outfileRegex);
-    Matcher matcher = pattern.matcher(sql);
-    if (matcher.find()) {
-      int lastMatchEnd = 0;
-      while (matcher.find()) {
-        lastMatchEnd = matcher.end(); // 记录匹配结束的位置
+      // 获取outfileDirPath文件夹下的所有文件名，只有一级，不需要递归
+      fileNames = outfileFolder.list();
+      if (fileNames != null) {
+        // 按文件名排序，使压缩包中的条目顺序和结果表格顺序固定
+        Arrays.sort(fileNames);
       }
 
-      // 替换最后一个匹配的路径
-      sql =
-          sql.substring(0, lastMatchEnd)
-              + sql.substring(lastMatchEnd) // on windows, '\' in path needs to be replaced by "\\".
-                  .replaceFirst(outfileRegex, "$1" + outfileDirPath.replace("\\", "\\\\") + "$3;");
-    }
-
-    QueryDataSet res = session.executeQuery(sql);
-
-    processExportByteStream(res);
-
-    // 获取outfileDirPath文件夹下的所有文件名，只有一级，不需要递归
-    String[] fileNames = outfileFolder.list();
-
-    // 如果有多个文件，压缩outfileDirPath文件夹
-    boolean hasMultipleFiles = fileNames != null && fileNames.length > 1;
-    String zipName = "all_file.zip";
-    if (hasMultipleFiles) {
-      FileOutputStream outputStream =
-          new FileOutputStream(Paths.get(outfileDirPath, zipName).toString());
-      ArrayList<File> fileList = new ArrayList<>();
-      for (String fileName : fileNames) {
-        fileList.add(new File(outfileDirPath + "/" + fileName));
+      // 如果有多个文件，提供压缩包下载。默认由文件服务器在下载时实时压缩，不在磁盘上生成压缩包
+      hasMultipleFiles = fileNames != null && fileNames.length > 1;
+      if (hasMultipleFiles && outfileZipMaterialize) {
+        ArrayList<File> fileList = new ArrayList<>();
+        for (String fileName : fileNames) {
+          fileList.add(new File(outfileDirPath + "/" + fileName));
+        }
+        try (FileOutputStream outputStream =
+            new FileOutputStream(Paths.get(outfileDirPath, zipName).toString())) {
+          if (zipExecutor != null) {
+            // 各文件并行压缩，按文件列表的顺序写入压缩包
+            new ParallelZipBuilder(zipExecutor, outfileZipLevel)
+                .write(fileList, outputStream, new File(outfileDirPath, ".zip-tmp"));
+          } else {
+            toZip(fileList, outputStream, outfileZipLevel);
+          }
+        }
+      }
+      finished = true;
+    } catch (SessionException | IOException | RuntimeException e) {
+      // 取消时中断会以ClosedByInterruptException、InterruptedIOException等形式抛出，统一按取消处理
+      if (task.isCancelled() && !(e instanceof CancellationException)) {
+        CancellationException cancelled = new CancellationException("任务被取消");
+        cancelled.initCause(e);
+        throw cancelled;
+      }
+      throw e;
+    } finally {
+      if (!finished) {
+        LOGGER.info("outfile export not finished, remove partial dir {}", outfileDirPath);
+        FileUtils.deleteQuietly(outfileFolder);
       }
-      toZip(fileList, outputStream);
-      outputStream.close();
     }
 
     // 清理NGINX_STATIC文件夹
-    downloadFileQueue.add(outfileDirPath);
-    double fileSize = getFileSize(outfileDirPath);
-    downloadFileSizeQueue.add(fileSize);
-    downloadFileTotalSize += fileSize;
-    clearNGINXStaticFiles();
+    registerDownloadDir(outfileDirPath);
 
     InterpreterResult interpreterResult = new InterpreterResult(InterpreterResult.Code.SUCCESS);
     if (showimg) {
@@ -641,8 +1577,7 @@ public class IginxInterpreter8 extends Interpreter {
     String downloadLink = "<a href=\"%s\" download=\"%s\">点击下载</a>";
     StringBuilder builder = new StringBuilder();
     builder.append("文件名").append(TAB).append("下载链接").append(NEWLINE);
-    String httpPrefix =
-        "http://" + localIpAddress + ":" + fileHttpPort + SimpleFileServer.PREFIX + "/";
+    String httpPrefix = getDownloadHttpPrefix();
     if (hasMultipleFiles) {
       builder
           .append("所有文件压缩包")
@@ -669,10 +1604,22 @@ public class IginxInterpreter8 extends Interpreter {
    * 将QueryDataSet中的结果导出到文件中。 拷贝自Client模块的Outfile相关代码，因为Client模块不能被引用
    *
    * @param res QueryDataSet
+   * @param task 当前段落任务，每个批次开始前检查是否已被取消
    * @throws SessionException
    * @throws IOException
    */
-  private void processExportByteStream(QueryDataSet res) throws SessionException, IOException {
+  private void processExportByteStream(QueryDataSet res, ParagraphTask task)
+      throws SessionException, IOException {
+    try {
+      exportToColumnFiles(res, task);
+    } finally {
+      // 无论正常结束还是被取消，都释放服务端游标
+      res.close();
+    }
+  }
+
+  private void exportToColumnFiles(QueryDataSet res, ParagraphTask task)
+      throws SessionException, IOException {
     String dir = res.getExportStreamDir();
 
     File dirFile = new File(dir);
@@ -710,11 +1657,20 @@ public class IginxInterpreter8 extends Interpreter {
       Files.deleteIfExists(Paths.get(columns[i]));
     }
 
-    while (res.hasMore()) {
-      List<List<byte[]>> cache = cacheResultByteArray(res);
-      exportByteStream(cache, columns);
+    try (ColumnFileWriters writers =
+        new ColumnFileWriters(columns, columnWriterExecutor, outfileWriterThreads)) {
+      if (outfilePipelineEnable) {
+        // 读取下一批的同时写入上一批
+        new PipelinedExporter(exportExecutor, fetchSize, outfilePipelineDepth)
+            .export(res, writers::write, task);
+      } else {
+        while (res.hasMore()) {
+          task.checkCancelled();
+          List<List<byte[]>> cache = cacheResultByteArray(res);
+          writers.write(cache);
+        }
+      }
     }
-    res.close();
 
     System.out.println(
         "Successfully write "
@@ -736,7 +1692,7 @@ public class IginxInterpreter8 extends Interpreter {
       throws SessionException {
     List<List<byte[]>> cache = new ArrayList<>();
     int rowIndex = 0;
-    while (queryDataSet.hasMore() && rowIndex < Integer.parseInt(fetchSize)) {
+    while (queryDataSet.hasMore() && rowIndex < fetchSize) {
       List<byte[]> nextRow = queryDataSet.nextRowAsBytes();
       if (nextRow != null) {
         cache.add(nextRow);
@@ -770,34 +1726,40 @@ public class IginxInterpreter8 extends Interpreter {
    * @throws RuntimeException
    */
   public static void toZip(List<File> srcFiles, OutputStream out) throws RuntimeException {
-    int BUFFER_SIZE = 2 * 1024;
-    ZipOutputStream zos = null;
+    toZip(srcFiles, out, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * 将给定的文件列表压缩成zip文件，输出到给定的输出流中
+   *
+   * @param srcFiles 文件列表
+   * @param out 输出流
+   * @param level 压缩级别，已经压缩过的文件不再压缩
+   * @throws RuntimeException
+   */
+  public static void toZip(List<File> srcFiles, OutputStream out, int level)
+      throws RuntimeException {
     try {
-      zos = new ZipOutputStream(out);
-      for (File srcFile : srcFiles) {
-        byte[] buf = new byte[BUFFER_SIZE];
-        zos.putNextEntry(new ZipEntry(srcFile.getName()));
-        int len;
-        FileInputStream in = new FileInputStream(srcFile);
-        while ((len = in.read(buf)) != -1) {
-          zos.write(buf, 0, len);
-        }
-        zos.closeEntry();
-        in.close();
-      }
+      ZipStreamer.writeZip(srcFiles, out, level);
     } catch (Exception e) {
       throw new RuntimeException("zip error", e);
-    } finally {
-      if (zos != null) {
-        try {
-          zos.close();
-        } catch (IOException e) {
-          e.printStackTrace();
-        }
-      }
     }
   }
 
+  /**
+   * 记录新生成的下载文件夹，并在文件夹数量或大小超限时清理最早的文件夹。多个段落可能并行执行，因此需要同步
+   *
+   * @param dirPath 下载文件夹路径
+   * @throws IOException
+   */
+  private synchronized void registerDownloadDir(String dirPath) throws IOException {
+    downloadFileQueue.add(dirPath);
+    double fileSize = getFileSize(dirPath);
+    downloadFileSizeQueue.add(fileSize);
+    downloadFileTotalSize += fileSize;
+    clearNGINXStaticFiles();
+  }
+
   /** 加载NGINX_STATIC文件夹下的文件信息，将文件夹名和文件夹大小加入到downloadFileQueue和downloadFileSizeQueue中 */
   private void loadNGINXStaticFilesInfo() throws IOException {
     File nginxStaticFolder = new File(outfileDir);
@@ -930,16 +1892,6 @@ public class IginxInterpreter8 extends Interpreter {
     }
   }
 
-  private String[] parseMultiLinesSQL(String sql) {
-    String[] tmp =
-        sql.replace(TAB, WHITESPACE)
-            .replace(NEWLINE, WHITESPACE)
-            .replaceAll(MULTISPACE, WHITESPACE)
-            .trim()
-            .split("(?<=;)");
-    return Arrays.stream(tmp).map(String::trim).toArray(String[]::new);
-  }
-
   private String convertToHTMLString(String str) {
     return str.contains("\n")
         ? str.replace("\n", "<br>").replace("\t", "&nbsp;&nbsp;&nbsp;&nbsp;")
@@ -947,7 +1899,8 @@ public class IginxInterpreter8 extends Interpreter {
   }
 
   /**
-   * 取消任务，如果任务正在执行，将任务的CompletableFuture设置为异常状态，使得任务能够被取消
+   * 取消任务，如果任务正在执行，将任务的CompletableFuture设置为异常状态，使得任务能够被取消；同时中断工作线程，
+   * 读取结果的循环在下一批次开始前退出，并释放服务端游标、删除未完成的导出文件
    *
    * @param context InterpreterContext上下文
    * @throws InterpreterException InterpreterException
@@ -955,11 +1908,10 @@ public class IginxInterpreter8 extends Interpreter {
   @Override
   public void cancel(InterpreterContext context) throws InterpreterException {
     String paragraphId = context.getParagraphId();
-    CompletableFuture<InterpreterResult> future = taskMap.get(paragraphId);
-    if (future != null) {
-      future.completeExceptionally(new CancellationException("任务被取消"));
+    ParagraphTask task = taskMap.remove(paragraphId);
+    if (task != null) {
+      task.cancel();
     }
-    taskMap.remove(paragraphId);
 
     // 暂停0.1秒，防止反复快速调用导致IGinX负载过大
     try {
@@ -969,6 +1921,20 @@ public class IginxInterpreter8 extends Interpreter {
     }
   }
 
+  /**
+   * 使用并行调度器，不同段落可以同时执行，最大并发数由iginx.concurrency.max配置
+   *
+   * @return Scheduler
+   */
+  @Override
+  public Scheduler getScheduler() {
+    int maxConcurrency =
+        Integer.parseInt(getProperty(IGINX_CONCURRENCY_MAX, DEFAULT_CONCURRENCY_MAX).trim());
+    return SchedulerFactory.singleton()
+        .createOrGetParallelScheduler(
+            IginxInterpreter8.class.getName() + this.hashCode(), maxConcurrency);
+  }
+
   @Override
   public FormType getFormType() throws InterpreterException {
     return FormType.SIMPLE;
@@ -1000,24 +1966,10 @@ public class IginxInterpreter8 extends Interpreter {
     return false;
   }
 
-  private boolean reopenSession() {
-    try {
-      session.closeSession();
-    } catch (SessionException ignored) {
-    }
-
-    try {
-      session.openSession();
-    } catch (SessionException e) {
-      return false;
-    }
-    return true;
-  }
-
-  private boolean hasMultiLoadData(String[] cmdList) {
+  private boolean hasMultiLoadData(List<SqlStatement> cmdList) {
     int loadDataSqlNum = 0;
-    for (String str : cmdList) {
-      if (SqlCmdUtil.removeExtraSpaces(str).toUpperCase().contains("LOAD DATA FROM INFILE")) {
+    for (SqlStatement cmd : cmdList) {
+      if (cmd.getType() == SqlStatement.Type.LOAD_DATA) {
         loadDataSqlNum++;
       }
     }
@@ -1041,28 +1993,40 @@ public class IginxInterpreter8 extends Interpreter {
     List<InterpreterResultMessage> message = interpreterResult.message();
     StringBuilder scripts = new StringBuilder(); // 注入自动运行脚本
     StringBuilder styles = new StringBuilder(); //  注入样式表
+    if (context.getConfig().remove(STREAMED_TABLE) != null) {
+      // 流式输出的表格不在interpreterResult中，单独设置table字体
+      FileUtil.renderingHtml(
+          scripts,
+          "static/highcharts/fontSize.js",
+          OUTPUT_TYPE,
+          InterpreterResult.Type.TABLE.name(),
+          PARAGRAPH_ID,
+          context.getParagraphId(),
+          FONT_SIZE,
+          String.valueOf(fontSize));
+    }
     for (int i = 0; i < message.size(); i++) {
       if (message.get(i).getType().equals(InterpreterResult.Type.TABLE)) {
         // table字体
-        scripts.append(
-            FileUtil.renderingHtml(
-                "static/highcharts/fontSize.js",
-                OUTPUT_TYPE,
-                InterpreterResult.Type.TABLE.name(),
-                PARAGRAPH_ID,
-                context.getParagraphId(),
-                FONT_SIZE,
-                String.valueOf(fontSize)));
+        FileUtil.renderingHtml(
+            scripts,
+            "static/highcharts/fontSize.js",
+            OUTPUT_TYPE,
+            InterpreterResult.Type.TABLE.name(),
+            PARAGRAPH_ID,
+            context.getParagraphId(),
+            FONT_SIZE,
+            String.valueOf(fontSize));
       } else if (message.get(i).getType().equals(InterpreterResult.Type.TEXT)) {
-        scripts.append(
-            FileUtil.renderingHtml(
-                "static/highcharts/fontSize.js",
-                OUTPUT_TYPE,
-                InterpreterResult.Type.TEXT.name(),
-                PARAGRAPH_ID,
-                context.getParagraphId(),
-                FONT_SIZE,
-                String.valueOf(fontSize)));
+        FileUtil.renderingHtml(
+            scripts,
+            "static/highcharts/fontSize.js",
+            OUTPUT_TYPE,
+            InterpreterResult.Type.TEXT.name(),
+            PARAGRAPH_ID,
+            context.getParagraphId(),
+            FONT_SIZE,
+            String.valueOf(fontSize));
       } else {
         LOGGER.debug("Not supported {} settings.", InterpreterResult.Type.TEXT);
       }
@@ -1080,31 +2044,47 @@ public class IginxInterpreter8 extends Interpreter {
   }
 
   /**
-   * 为每条命令缓存自定义参数
+   * 为每条命令缓存自定义参数，参数为语句开头以>开始的指令，已由SqlLexer提取
    *
    * @param cmd
    * @param context
+   * @return 去掉指令后的sql
    */
-  private String setCmdConfig(String cmd, InterpreterContext context) {
-    String sql = cmd;
-    String[] parts = cmd.split(WHITESPACE);
-    for (String part : parts) {
-      if (!part.startsWith(CMD_STARTER)) {
-        break;
-      }
+  private String setCmdConfig(SqlStatement cmd, InterpreterContext context) {
+    for (String part : cmd.getDirectives()) {
       // 是否展示树状图
       if (part.equalsIgnoreCase(GRAPHICAL_RESULTS)) {
         context.getConfig().put(GRAPHICAL_RESULTS, "true");
-        sql = sql.substring(GRAPHICAL_RESULTS.length() + 1);
-      }
-      // key按时间戳输出，默认按长整型输出
-      if (part.equalsIgnoreCase(PRINT_KEY_TIME)) {
+      } else if (part.equalsIgnoreCase(PRINT_KEY_TIME)) {
+        // key按时间戳输出，默认按长整型输出
         context.getConfig().put(PRINT_KEY_TIME, "true");
-        sql = sql.substring(PRINT_KEY_TIME.length() + 1);
+      } else if (part.regionMatches(true, 0, DOWNSAMPLE + ".", 0, DOWNSAMPLE.length() + 1)) {
+        setDownsampleConfig(part, context);
+      } else {
+        LOGGER.warn("unknown command parameter {}, ignored", part);
       }
     }
 
-    return sql;
+    return cmd.getSql();
+  }
+
+  /** 解析>downsample.lttb[=N]或>downsample.minmax[=N]，未指定N时使用iginx.downsample.points */
+  private void setDownsampleConfig(String part, InterpreterContext context) {
+    String spec = part.substring(DOWNSAMPLE.length() + 1);
+    int eq = spec.indexOf('=');
+    try {
+      Downsampler.Method method =
+          Downsampler.Method.valueOf(
+              (eq < 0 ? spec : spec.substring(0, eq)).toUpperCase(Locale.ROOT));
+      int points = eq < 0 ? downsamplePoints : Integer.parseInt(spec.substring(eq + 1).trim());
+      if (points <= 0) {
+        throw new IllegalArgumentException("points must be positive");
+      }
+      context.getConfig().put(DOWNSAMPLE, method.name());
+      context.getConfig().put(DOWNSAMPLE_POINTS, String.valueOf(points));
+    } catch (IllegalArgumentException e) {
+      LOGGER.warn("invalid command parameter {}, ignored", part);
+    }
   }
 
   private String getCmdConfig(String cmd, InterpreterContext context, String propertyName) {
@@ -1114,5 +2094,7 @@ public class IginxInterpreter8 extends Interpreter {
   private void clearCmdConfig(InterpreterContext context) {
     context.getConfig().remove(GRAPHICAL_RESULTS);
     context.getConfig().remove(PRINT_KEY_TIME);
+    context.getConfig().remove(DOWNSAMPLE);
+    context.getConfig().remove(DOWNSAMPLE_POINTS);
   }
 }
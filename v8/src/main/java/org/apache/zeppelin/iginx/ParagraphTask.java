@@ -0,0 +1,61 @@
+package org.apache.zeppelin.iginx;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import org.apache.zeppelin.interpreter.InterpreterResult;
+
+/**
+ * 正在执行的段落任务。cancel时除了让等待结果的线程立即返回，还会中断工作线程，并让批量读取结果的循环在下一批次开始前退出。
+ *
+ * <p>QueryDataSet和Session都不是线程安全的，因此服务端游标、半成品文件由工作线程在退出循环后自行释放，cancel线程只负责设置标记。
+ */
+public class ParagraphTask {
+  private final String paragraphId;
+  private final CompletableFuture<InterpreterResult> future = new CompletableFuture<>();
+  private volatile Future<?> worker;
+  private volatile boolean cancelled = false;
+
+  public ParagraphTask(String paragraphId) {
+    this.paragraphId = paragraphId;
+  }
+
+  public String getParagraphId() {
+    return paragraphId;
+  }
+
+  public CompletableFuture<InterpreterResult> getFuture() {
+    return future;
+  }
+
+  public void setWorker(Future<?> worker) {
+    this.worker = worker;
+    if (cancelled) {
+      worker.cancel(true);
+    }
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * 在每个批次开始前调用，任务已被取消时抛出CancellationException
+   *
+   * @throws CancellationException 任务已被取消
+   */
+  public void checkCancelled() throws CancellationException {
+    if (cancelled) {
+      throw new CancellationException("Paragraph " + paragraphId + " has been cancelled.");
+    }
+  }
+
+  public void cancel() {
+    cancelled = true;
+    future.completeExceptionally(new CancellationException("任务被取消"));
+    Future<?> current = worker;
+    if (current != null) {
+      current.cancel(true);
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package org.apache.zeppelin.iginx;
+
+import cn.edu.tsinghua.iginx.exception.SessionException;
+import cn.edu.tsinghua.iginx.session.QueryDataSet;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 流水线方式导出OUTFILE结果：调用线程通过nextRowAsBytes读取批次放入有界队列，写线程同时将上一批写入文件，使网络读取和磁盘写入重叠。
+ *
+ * <p>QueryDataSet不是线程安全的，只由调用线程读取。批次列表在两个线程之间循环复用，队列深度决定了最多缓存的批次数。
+ */
+public class PipelinedExporter {
+  private static final long POLL_INTERVAL_MS = 100;
+  // 结束标记，与复用的批次列表不是同一个对象
+  private static final List<List<byte[]>> END_OF_DATA = new ArrayList<>();
+
+  /** 将一批结果写入文件 */
+  public interface BatchWriter {
+    void write(List<List<byte[]>> batch) throws IOException;
+  }
+
+  private final ExecutorService writerExecutor;
+  private final int fetchSize;
+  private final int depth;
+
+  /**
+   * @param writerExecutor 执行写任务的线程池
+   * @param fetchSize 每批读取的行数
+   * @param depth 最多同时缓存的批次数
+   */
+  public PipelinedExporter(ExecutorService writerExecutor, int fetchSize, int depth) {
+    this.writerExecutor = writerExecutor;
+    this.fetchSize = Math.max(1, fetchSize);
+    this.depth = Math.max(1, depth);
+  }
+
+  /**
+   * 读取dataSet中的全部结果并交给writer写入
+   *
+   * @param dataSet 查询结果，由调用方关闭
+   * @param writer 写入一批结果
+   * @param task 当前段落任务，每个批次开始前检查是否已被取消
+   */
+  public void export(QueryDataSet dataSet, BatchWriter writer, ParagraphTask task)
+      throws SessionException, IOException {
+    BlockingQueue<List<List<byte[]>>> free = new ArrayBlockingQueue<>(depth);
+    BlockingQueue<List<List<byte[]>>> filled = new ArrayBlockingQueue<>(depth + 1);
+    for (int i = 0; i < depth; i++) {
+      free.add(new ArrayList<>(fetchSize));
+    }
+    Future<?> writerFuture = writerExecutor.submit(() -> writeBatches(filled, free, writer));
+    boolean finished = false;
+    try {
+      while (dataSet.hasMore()) {
+        task.checkCancelled();
+        List<List<byte[]>> batch = takeFreeBatch(free, writerFuture);
+        while (batch.size() < fetchSize && dataSet.hasMore()) {
+          List<byte[]> row = dataSet.nextRowAsBytes();
+          if (row != null) {
+            batch.add(row);
+          }
+        }
+        filled.add(batch);
+      }
+      filled.add(END_OF_DATA);
+      waitWriter(writerFuture);
+      finished = true;
+    } finally {
+      if (!finished) {
+        writerFuture.cancel(true);
+      }
+    }
+  }
+
+  private static Void writeBatches(
+      BlockingQueue<List<List<byte[]>>> filled,
+      BlockingQueue<List<List<byte[]>>> free,
+      BatchWriter writer)
+      throws IOException, InterruptedException {
+    while (true) {
+      List<List<byte[]>> batch = filled.take();
+      if (batch == END_OF_DATA) {
+        return null;
+      }
+      writer.write(batch);
+      batch.clear();
+      free.add(batch);
+    }
+  }
+
+  /** 等待写线程归还一个空批次，写线程出错时立即抛出其异常 */
+  private static List<List<byte[]>> takeFreeBatch(
+      BlockingQueue<List<List<byte[]>>> free, Future<?> writerFuture) throws IOException {
+    try {
+      while (true) {
+        List<List<byte[]>> batch = free.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        if (batch != null) {
+          return batch;
+        }
+        if (writerFuture.isDone()) {
+          waitWriter(writerFuture);
+          throw new IOException("Export writer stopped unexpectedly");
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException("任务被取消");
+    }
+  }
+
+  private static void waitWriter(Future<?> writerFuture) throws IOException {
+    try {
+      writerFuture.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException("任务被取消");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException("Failed to write export files: " + cause.getMessage(), cause);
+    }
+  }
+}
@@ -0,0 +1,360 @@
+package org.apache.zeppelin.iginx;
+
+import cn.edu.tsinghua.iginx.constant.GlobalConstant;
+import cn.edu.tsinghua.iginx.exception.SessionException;
+import cn.edu.tsinghua.iginx.session.QueryDataSet;
+import cn.edu.tsinghua.iginx.utils.FormatUtils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.zeppelin.iginx.util.CsvResultWriter;
+import org.apache.zeppelin.iginx.util.Downsampler;
+import org.apache.zeppelin.interpreter.InterpreterOutput;
+import org.apache.zeppelin.interpreter.InterpreterResult;
+
+/**
+ * 按批次读取QueryDataSet，并将每批结果直接格式化写入InterpreterContext.out，不再把整个结果集缓存为List<List<String>>。
+ *
+ * <p>输出的行数和字节数超过上限后停止读取，由调用方关闭QueryDataSet并提示结果已被截断。开启落盘后不再截断，超过阈值的完整结果写入CSV文件， 只展示预览行。
+ * 开启降采样后读取全部结果，完整结果写入CSV文件，只展示降采样后的行。
+ */
+public class QueryResultStreamer {
+  private static final char TAB = '\t';
+  private static final char NEWLINE = '\n';
+
+  private final int fetchSize;
+  private final long maxRows;
+  private final long maxBytes;
+  private final boolean keyTimeEnable;
+  private final String timePrecision;
+
+  private File spillFile = null;
+  private long spillRows = 0;
+  private long spillBytes = 0;
+  private int previewRows = 0;
+  private File downsampleFile = null;
+  private Downsampler.Method downsampleMethod = null;
+  private int downsamplePoints = 0;
+
+  /**
+   * @param fetchSize 每批次读取的行数
+   * @param maxRows 最多输出的行数，小于等于0表示不限制
+   * @param maxBytes 最多输出的字节数，小于等于0表示不限制
+   * @param keyTimeEnable key列是否按时间格式输出
+   * @param timePrecision 时间精度
+   */
+  public QueryResultStreamer(
+      int fetchSize, long maxRows, long maxBytes, boolean keyTimeEnable, String timePrecision) {
+    this.fetchSize = Math.max(1, fetchSize);
+    this.maxRows = maxRows;
+    this.maxBytes = maxBytes;
+    this.keyTimeEnable = keyTimeEnable;
+    this.timePrecision = timePrecision;
+  }
+
+  /**
+   * 开启结果落盘：结果超过spillRows行或spillBytes字节时，只展示前previewRows行，完整结果写入spillFile
+   *
+   * @param spillFile 完整结果的CSV文件
+   * @param spillRows 触发落盘的行数，小于等于0表示不按行数判断
+   * @param spillBytes 触发落盘的字节数，小于等于0表示不按字节数判断
+   * @param previewRows 落盘后展示的行数
+   */
+  public void enableSpill(File spillFile, long spillRows, long spillBytes, int previewRows) {
+    this.spillFile = spillFile;
+    this.spillRows = spillRows;
+    this.spillBytes = spillBytes;
+    this.previewRows = previewRows;
+  }
+
+  /**
+   * 开启降采样，优先于落盘：读取全部结果写入fullFile，向out输出每个数值列降采样到points个点后的行
+   *
+   * @param method 降采样方法
+   * @param points 每列的目标点数
+   * @param fullFile 完整结果的CSV文件
+   */
+  public void enableDownsample(Downsampler.Method method, int points, File fullFile) {
+    this.downsampleMethod = method;
+    this.downsamplePoints = points;
+    this.downsampleFile = fullFile;
+  }
+
+  /**
+   * 将查询结果以TABLE格式逐批写入out
+   *
+   * @param dataSet 查询结果
+   * @param out 段落输出
+   * @param task 当前段落任务，每个批次开始前检查是否已被取消
+   * @return 输出的行数、字节数以及是否被截断、落盘
+   */
+  public StreamSummary stream(QueryDataSet dataSet, InterpreterOutput out, ParagraphTask task)
+      throws SessionException, IOException {
+    StreamSummary summary = new StreamSummary();
+    List<String> columns = dataSet.getColumnList();
+    if (columns == null || columns.isEmpty()) {
+      return summary;
+    }
+    boolean hasKey = columns.get(0).equals(GlobalConstant.KEY_NAME);
+    String[] header = columns.toArray(new String[0]);
+    out.setType(InterpreterResult.Type.TABLE);
+    if (downsampleFile != null) {
+      streamWithDownsample(dataSet, out, task, header, hasKey, summary);
+    } else if (spillFile == null) {
+      streamToOutput(dataSet, out, task, header, hasKey, summary);
+    } else {
+      streamWithSpill(dataSet, out, task, header, hasKey, summary);
+    }
+    return summary;
+  }
+
+  private void streamToOutput(
+      QueryDataSet dataSet,
+      InterpreterOutput out,
+      ParagraphTask task,
+      String[] header,
+      boolean hasKey,
+      StreamSummary summary)
+      throws SessionException, IOException {
+    StringBuilder builder = new StringBuilder();
+    appendTableRow(builder, header, false);
+    while (dataSet.hasMore()) {
+      task.checkCancelled();
+      if (reachLimit(summary)) {
+        summary.truncated = true;
+        break;
+      }
+      int batchRows = 0;
+      while (batchRows < fetchSize && !reachLimit(summary) && dataSet.hasMore()) {
+        Object[] row = dataSet.nextRow();
+        if (row == null) {
+          continue;
+        }
+        int lengthBefore = builder.length();
+        appendTableRow(builder, formatRow(row, hasKey), true);
+        summary.bytes += builder.length() - lengthBefore;
+        summary.rows++;
+        batchRows++;
+      }
+      flush(builder, out);
+    }
+    flush(builder, out);
+  }
+
+  /** 先缓存不超过落盘阈值的结果，超过阈值后将缓存和后续结果全部写入CSV文件，只向out输出预览行 */
+  private void streamWithSpill(
+      QueryDataSet dataSet,
+      InterpreterOutput out,
+      ParagraphTask task,
+      String[] header,
+      boolean hasKey,
+      StreamSummary summary)
+      throws SessionException, IOException {
+    List<String[]> buffered = new ArrayList<>();
+    long bufferedBytes = 0;
+    CsvResultWriter csvWriter = null;
+    try {
+      while (dataSet.hasMore()) {
+        task.checkCancelled();
+        int batchRows = 0;
+        while (batchRows < fetchSize && dataSet.hasMore()) {
+          Object[] row = dataSet.nextRow();
+          if (row == null) {
+            continue;
+          }
+          String[] values = formatRow(row, hasKey);
+          summary.rows++;
+          batchRows++;
+          if (csvWriter != null) {
+            csvWriter.writeRow(values);
+            continue;
+          }
+          buffered.add(values);
+          bufferedBytes += estimateBytes(values);
+          if (exceedSpillThreshold(buffered.size(), bufferedBytes)) {
+            csvWriter = new CsvResultWriter(spillFile);
+            csvWriter.writeRow(header);
+            for (String[] bufferedRow : buffered) {
+              csvWriter.writeRow(bufferedRow);
+            }
+            writeTable(header, buffered.subList(0, Math.min(previewRows, buffered.size())), out);
+            summary.spilled = true;
+            buffered = null;
+          }
+        }
+      }
+      if (csvWriter == null) {
+        writeTable(header, buffered, out);
+        summary.bytes = bufferedBytes;
+      }
+    } finally {
+      if (csvWriter != null) {
+        csvWriter.close();
+      }
+    }
+  }
+
+  /** 逐行写入CSV文件并输入降采样器，读取完毕后只向out输出降采样后的行 */
+  private void streamWithDownsample(
+      QueryDataSet dataSet,
+      InterpreterOutput out,
+      ParagraphTask task,
+      String[] header,
+      boolean hasKey,
+      StreamSummary summary)
+      throws SessionException, IOException {
+    Downsampler downsampler =
+        new Downsampler(downsampleMethod, downsamplePoints, header.length, hasKey);
+    try (CsvResultWriter csvWriter = new CsvResultWriter(downsampleFile)) {
+      csvWriter.writeRow(header);
+      while (dataSet.hasMore()) {
+        task.checkCancelled();
+        int batchRows = 0;
+        while (batchRows < fetchSize && dataSet.hasMore()) {
+          Object[] row = dataSet.nextRow();
+          if (row == null) {
+            continue;
+          }
+          String[] values = formatRow(row, hasKey);
+          csvWriter.writeRow(values);
+          downsampler.add(row, values);
+          summary.rows++;
+          batchRows++;
+        }
+      }
+    }
+    List<String[]> sampled = downsampler.finish();
+    for (String[] values : sampled) {
+      summary.bytes += estimateBytes(values);
+    }
+    summary.displayedRows = sampled.size();
+    summary.downsampled = sampled.size() < summary.rows;
+    writeTable(header, sampled, out);
+  }
+
+  private boolean reachLimit(StreamSummary summary) {
+    return (maxRows > 0 && summary.rows >= maxRows) || (maxBytes > 0 && summary.bytes >= maxBytes);
+  }
+
+  private boolean exceedSpillThreshold(long rows, long bytes) {
+    return (spillRows > 0 && rows > spillRows) || (spillBytes > 0 && bytes > spillBytes);
+  }
+
+  private static long estimateBytes(String[] values) {
+    long bytes = values.length;
+    for (String value : values) {
+      bytes += value.length();
+    }
+    return bytes;
+  }
+
+  private String[] formatRow(Object[] row, boolean hasKey) {
+    String[] values = new String[row.length];
+    for (int i = 0; i < row.length; i++) {
+      values[i] = (i == 0 && hasKey) ? formatKey(row[0]) : formatValue(row[i]);
+    }
+    return values;
+  }
+
+  private static void writeTable(String[] header, List<String[]> rows, InterpreterOutput out)
+      throws IOException {
+    StringBuilder builder = new StringBuilder();
+    appendTableRow(builder, header, false);
+    for (String[] row : rows) {
+      appendTableRow(builder, row, true);
+    }
+    flush(builder, out);
+  }
+
+  private static void appendTableRow(StringBuilder builder, String[] values, boolean escape) {
+    for (int i = 0; i < values.length; i++) {
+      if (i != 0) {
+        builder.append(TAB);
+      }
+      if (escape) {
+        appendHtmlValue(builder, values[i]);
+      } else {
+        builder.append(values[i]);
+      }
+    }
+    builder.append(NEWLINE);
+  }
+
+  private String formatKey(Object key) {
+    if (keyTimeEnable && key instanceof Long) {
+      return FormatUtils.formatTime((Long) key, FormatUtils.DEFAULT_TIME_FORMAT, timePrecision);
+    }
+    return String.valueOf(key);
+  }
+
+  public static String formatValue(Object value) {
+    if (value instanceof byte[]) {
+      return new String((byte[]) value, StandardCharsets.UTF_8);
+    }
+    return String.valueOf(value);
+  }
+
+  /** 与表格结果一致，将单元格中的换行和制表符转换为html，避免破坏表格结构 */
+  private static void appendHtmlValue(StringBuilder builder, String value) {
+    if (value.indexOf('\n') < 0 && value.indexOf('\t') < 0) {
+      builder.append(value);
+      return;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '\n') {
+        builder.append("<br>");
+      } else if (c == '\t') {
+        builder.append("&nbsp;&nbsp;&nbsp;&nbsp;");
+      } else {
+        builder.append(c);
+      }
+    }
+  }
+
+  private static void flush(StringBuilder builder, InterpreterOutput out) throws IOException {
+    if (builder.length() == 0) {
+      return;
+    }
+    out.write(builder.toString());
+    out.flush();
+    builder.setLength(0);
+  }
+
+  public static class StreamSummary {
+    private long rows = 0;
+    private long bytes = 0;
+    private boolean truncated = false;
+    private boolean spilled = false;
+    private boolean downsampled = false;
+    private long displayedRows = 0;
+
+    public long getRows() {
+      return rows;
+    }
+
+    public long getBytes() {
+      return bytes;
+    }
+
+    public boolean isTruncated() {
+      return truncated;
+    }
+
+    public boolean isSpilled() {
+      return spilled;
+    }
+
+    /** 是否只输出了降采样后的行 */
+    public boolean isDownsampled() {
+      return downsampled;
+    }
+
+    /** 降采样后输出的行数 */
+    public long getDisplayedRows() {
+      return displayedRows;
+    }
+  }
+}
@@ -0,0 +1,204 @@
+package org.apache.zeppelin.iginx;
+
+import cn.edu.tsinghua.iginx.exception.SessionException;
+import cn.edu.tsinghua.iginx.session.Session;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.zeppelin.iginx.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * IGinX Session连接池。每条语句执行前借出一个Session，执行完毕后归还，避免不同段落共用同一个Thrift连接。
+ *
+ * <p>连接数受maxSize限制，空闲连接超过idleTimeout后被回收，但至少保留minSize个；借出时最多等待borrowTimeout。
+ */
+public class SessionPool {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SessionPool.class);
+
+  private final String host;
+  private final int port;
+  private final String username;
+  private final String password;
+  private final int minSize;
+  private final int maxSize;
+  private final long idleTimeoutMs;
+  private final long borrowTimeoutMs;
+
+  private final LinkedBlockingDeque<IdleSession> idleSessions = new LinkedBlockingDeque<>();
+  private final Semaphore permits;
+  private final AtomicInteger totalSessions = new AtomicInteger(0);
+  private final ScheduledExecutorService evictor;
+  private volatile boolean closed = false;
+
+  public SessionPool(
+      String host,
+      int port,
+      String username,
+      String password,
+      int minSize,
+      int maxSize,
+      long idleTimeoutMs,
+      long borrowTimeoutMs) {
+    this.host = host;
+    this.port = port;
+    this.username = username;
+    this.password = password;
+    this.maxSize = Math.max(1, maxSize);
+    this.minSize = Math.max(0, Math.min(minSize, this.maxSize));
+    this.idleTimeoutMs = idleTimeoutMs;
+    this.borrowTimeoutMs = borrowTimeoutMs;
+    this.permits = new Semaphore(this.maxSize, true);
+    this.evictor =
+        Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("iginx-session-evictor"));
+  }
+
+  /** 预先建立minSize个连接，并启动空闲连接回收任务 */
+  public void init() throws SessionException {
+    for (int i = 0; i < minSize; i++) {
+      idleSessions.offerLast(new IdleSession(createSession()));
+    }
+    if (idleTimeoutMs > 0) {
+      long period = Math.max(1000L, idleTimeoutMs / 2);
+      evictor.scheduleWithFixedDelay(
+          this::evictIdleSessions, period, period, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * 借出一个可用的Session，连接池已满时最多等待borrowTimeout
+   *
+   * @return 可用的Session
+   * @throws SessionException 等待超时或无法建立连接
+   */
+  public Session borrow() throws SessionException {
+    if (closed) {
+      throw new SessionException("Session pool is closed.");
+    }
+    try {
+      if (!permits.tryAcquire(borrowTimeoutMs, TimeUnit.MILLISECONDS)) {
+        throw new SessionException(
+            "Timed out after "
+                + borrowTimeoutMs
+                + "ms waiting for an idle IGinX session, all "
+                + maxSize
+                + " sessions are busy.");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SessionException("Interrupted while waiting for an idle IGinX session.");
+    }
+
+    try {
+      IdleSession idle = idleSessions.pollFirst();
+      if (idle != null) {
+        return idle.session;
+      }
+      return createSession();
+    } catch (SessionException | RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  /** 归还Session，连接池已关闭时直接关闭该连接 */
+  public void release(Session session) {
+    if (session == null) {
+      return;
+    }
+    if (closed) {
+      destroySession(session);
+    } else {
+      idleSessions.offerFirst(new IdleSession(session));
+    }
+    permits.release();
+  }
+
+  /**
+   * 校验失败的Session不再归还到池中：关闭并重建连接。重建成功后放回空闲队列，否则只释放名额，下次借出时再尝试建立连接。
+   *
+   * @param session 出现连接错误的Session
+   * @return true表示连接重建成功
+   */
+  public boolean invalidate(Session session) {
+    if (session == null) {
+      return false;
+    }
+    destroySession(session);
+    boolean reopened = false;
+    try {
+      if (!closed) {
+        idleSessions.offerFirst(new IdleSession(createSession()));
+        reopened = true;
+      }
+    } catch (SessionException e) {
+      LOGGER.warn("can not reopen IGinX session", e);
+    }
+    permits.release();
+    return reopened;
+  }
+
+  public void close() {
+    closed = true;
+    evictor.shutdownNow();
+    IdleSession idle;
+    while ((idle = idleSessions.pollFirst()) != null) {
+      destroySession(idle.session);
+    }
+  }
+
+  public int getActiveCount() {
+    return maxSize - permits.availablePermits();
+  }
+
+  public int getIdleCount() {
+    return idleSessions.size();
+  }
+
+  private Session createSession() throws SessionException {
+    Session session = new Session(host, port, username, password);
+    session.openSession();
+    totalSessions.incrementAndGet();
+    return session;
+  }
+
+  private void destroySession(Session session) {
+    totalSessions.decrementAndGet();
+    try {
+      session.closeSession();
+    } catch (SessionException e) {
+      LOGGER.debug("close IGinX session error", e);
+    }
+  }
+
+  /** 回收空闲时间超过idleTimeout的连接，保留至少minSize个 */
+  private void evictIdleSessions() {
+    long now = System.currentTimeMillis();
+    Iterator<IdleSession> iterator = idleSessions.descendingIterator();
+    while (iterator.hasNext() && totalSessions.get() > minSize) {
+      IdleSession idle = iterator.next();
+      if (now - idle.since < idleTimeoutMs) {
+        continue;
+      }
+      if (idleSessions.remove(idle)) {
+        LOGGER.debug("evict idle IGinX session, idle {}ms", now - idle.since);
+        destroySession(idle.session);
+      }
+    }
+  }
+
+  private static class IdleSession {
+    private final Session session;
+    private final long since;
+
+    private IdleSession(Session session) {
+      this.session = session;
+      this.since = System.currentTimeMillis();
+    }
+  }
+}
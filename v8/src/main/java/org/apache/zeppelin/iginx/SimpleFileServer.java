@@ -1,15 +1,36 @@
 package org.apache.zeppelin.iginx;
 
+import com.alibaba.fastjson2.JSON;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 import java.io.*;
+import java.lang.reflect.Method;
 import java.net.*;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.apache.zeppelin.iginx.util.FileResponder;
+import org.apache.zeppelin.iginx.util.GraphCache;
+import org.apache.zeppelin.iginx.util.GraphTreeStore;
+import org.apache.zeppelin.iginx.util.HighchartsTreeNode;
 import org.apache.zeppelin.iginx.util.HttpUtil;
+import org.apache.zeppelin.iginx.util.MultipartParser;
+import org.apache.zeppelin.iginx.util.NamedThreadFactory;
+import org.apache.zeppelin.iginx.util.ZipStreamer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,20 +40,80 @@ public class SimpleFileServer {
   public static String PREFIX = "/files";
   public static String PREFIX_UPLOAD = "/files/upload";
   public static String PREFIX_GRAPH = "/graphs";
+  public static String PREFIX_SUBTREE = "/graphs/subtree";
   private int port;
   private String fileDir;
   private String uploadFileDir;
   private Long uploadDirMaxSize;
+  private long uploadFileMaxSize;
+  private int zipLevel;
+  private int workerThreads = 16;
+  private int workerQueueSize = 256;
+  private int uploadThreads = 2;
+  private int uploadQueueSize = 16;
+  private int backlog = 0;
+  private boolean virtualThreads = false;
+  private ExecutorService requestExecutor = null;
+  private ExecutorService uploadExecutor = null;
+  private GraphCache graphCache = null;
+  private GraphTreeStore graphTreeStore = null;
   protected static final boolean isOnWin =
       System.getProperty("os.name").toLowerCase().contains("win");
 
   private HttpServer httpServer = null;
 
-  public SimpleFileServer(int port, String fileDir, String uploadFileDir, long uploadDirMaxSize) {
+  /**
+   * @param uploadFileMaxSize 单个上传文件的最大字节数，小于等于0表示不限制
+   * @param zipLevel 下载文件夹压缩包时的压缩级别
+   */
+  public SimpleFileServer(
+      int port,
+      String fileDir,
+      String uploadFileDir,
+      long uploadDirMaxSize,
+      long uploadFileMaxSize,
+      int zipLevel) {
     this.port = port;
     this.fileDir = fileDir;
     this.uploadFileDir = uploadFileDir;
     this.uploadDirMaxSize = uploadDirMaxSize;
+    this.uploadFileMaxSize = uploadFileMaxSize;
+    this.zipLevel = zipLevel;
+  }
+
+  /**
+   * 设置处理请求的线程池，需在start之前调用
+   *
+   * @param workerThreads 处理下载、图页面请求的线程数
+   * @param workerQueueSize 等待处理的请求数上限，超出后返回503
+   * @param uploadThreads 处理上传的线程数，上传使用单独的线程池，不占用下载线程
+   * @param uploadQueueSize 等待处理的上传数上限，超出后返回503
+   * @param backlog 等待accept的连接数上限，小于等于0时使用系统默认值
+   * @param virtualThreads 是否每个请求使用一个虚拟线程，仅在JDK 21及以上版本生效
+   */
+  public void configureExecutors(
+      int workerThreads,
+      int workerQueueSize,
+      int uploadThreads,
+      int uploadQueueSize,
+      int backlog,
+      boolean virtualThreads) {
+    this.workerThreads = Math.max(1, workerThreads);
+    this.workerQueueSize = Math.max(1, workerQueueSize);
+    this.uploadThreads = Math.max(1, uploadThreads);
+    this.uploadQueueSize = Math.max(1, uploadQueueSize);
+    this.backlog = backlog;
+    this.virtualThreads = virtualThreads;
+  }
+
+  /** 设置与解释器共享的图页面缓存，需在start之前调用 */
+  public void setGraphCache(GraphCache graphCache) {
+    this.graphCache = graphCache;
+  }
+
+  /** 设置按需加载树状图子节点所用的树，需在start之前调用 */
+  public void setGraphTreeStore(GraphTreeStore graphTreeStore) {
+    this.graphTreeStore = graphTreeStore;
   }
 
   public void start() throws IOException {
@@ -56,10 +137,38 @@ public class SimpleFileServer {
 
     try {
       LOGGER.info("Starting SimpleFileServer on port " + port);
-      httpServer = HttpServer.create(new InetSocketAddress(port), 0);
-      httpServer.createContext(PREFIX, new FileHandler(fileDir));
-      httpServer.createContext(PREFIX_UPLOAD, new UploadHandler(uploadFileDir));
-      httpServer.createContext(PREFIX_GRAPH, new GraphHandler(fileDir));
+      httpServer = HttpServer.create(new InetSocketAddress(port), Math.max(0, backlog));
+      ExecutorService virtualExecutor = virtualThreads ? newVirtualThreadExecutor() : null;
+      if (virtualExecutor != null) {
+        requestExecutor = virtualExecutor;
+        uploadExecutor = virtualExecutor;
+      } else {
+        // 队列满时拒绝请求并返回503，不在接收连接的线程中执行，避免阻塞其他连接
+        requestExecutor =
+            newPool(
+                workerThreads,
+                new ArrayBlockingQueue<>(workerQueueSize),
+                "iginx-file-server",
+                new ThreadPoolExecutor.AbortPolicy());
+        uploadExecutor =
+            newPool(
+                uploadThreads,
+                new ArrayBlockingQueue<>(uploadQueueSize),
+                "iginx-file-upload",
+                new ThreadPoolExecutor.AbortPolicy());
+      }
+      // 接收连接的线程只负责把请求转交给线程池
+      httpServer.createContext(
+          PREFIX, new OffloadHandler(new FileHandler(fileDir, zipLevel), requestExecutor));
+      httpServer.createContext(
+          PREFIX_UPLOAD, new OffloadHandler(new UploadHandler(uploadFileDir), uploadExecutor));
+      httpServer.createContext(
+          PREFIX_GRAPH, new OffloadHandler(new GraphHandler(fileDir, graphCache), requestExecutor));
+      if (graphTreeStore != null) {
+        httpServer.createContext(
+            PREFIX_SUBTREE,
+            new OffloadHandler(new SubtreeHandler(graphTreeStore), requestExecutor));
+      }
       httpServer.start();
     } catch (IOException e) {
       LOGGER.error("Error starting SimpleFileServer", e);
@@ -71,13 +180,80 @@ public class SimpleFileServer {
     if (httpServer != null) {
       httpServer.stop(0);
     }
+    if (uploadExecutor != null) {
+      uploadExecutor.shutdownNow();
+    }
+    if (requestExecutor != null) {
+      requestExecutor.shutdownNow();
+    }
+  }
+
+  private static ThreadPoolExecutor newPool(
+      int threads,
+      BlockingQueue<Runnable> queue,
+      String name,
+      RejectedExecutionHandler rejectedHandler) {
+    ThreadPoolExecutor pool =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            60L,
+            TimeUnit.SECONDS,
+            queue,
+            new NamedThreadFactory(name),
+            rejectedHandler);
+    pool.allowCoreThreadTimeOut(true);
+    return pool;
+  }
+
+  /** JDK 21及以上版本返回每个任务一个虚拟线程的线程池，否则返回null。项目按JDK 8编译，因此通过反射获取 */
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) method.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      LOGGER.warn("virtual threads are not supported by this JVM, use thread pool instead");
+      return null;
+    }
+  }
+
+  /** 将请求转交给指定线程池处理，线程池拒绝时返回503 */
+  static class OffloadHandler implements HttpHandler {
+    private final HttpHandler handler;
+    private final ExecutorService executor;
+
+    public OffloadHandler(HttpHandler handler, ExecutorService executor) {
+      this.handler = handler;
+      this.executor = executor;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      try {
+        executor.execute(
+            () -> {
+              // 处理器抛出任何异常都关闭连接，避免客户端一直等待响应
+              try {
+                handler.handle(exchange);
+              } catch (IOException | RuntimeException e) {
+                LOGGER.error("Error handling {}", exchange.getRequestURI(), e);
+                exchange.close();
+              }
+            });
+      } catch (RejectedExecutionException e) {
+        sendText(exchange, 503, "Service Unavailable");
+        exchange.close();
+      }
+    }
   }
 
   static class FileHandler implements HttpHandler {
     private String basePath;
+    private int zipLevel;
 
-    public FileHandler(String basePath) {
+    public FileHandler(String basePath, int zipLevel) {
       this.basePath = basePath;
+      this.zipLevel = zipLevel;
     }
 
     @Override
@@ -90,26 +266,14 @@ public class SimpleFileServer {
         String requestPath = exchange.getRequestURI().getPath();
         String fileName = requestPath.substring(PREFIX.length());
         File file = new File(basePath + fileName);
+        File zipDir;
 
         // 检查文件是否存在且不是目录
         if (file.exists() && !file.isDirectory()) {
-          // 设置响应头为文件下载
-          exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
-          exchange
-              .getResponseHeaders()
-              .set("Content-Disposition", "attachment; filename=\"" + file.getName() + "\"");
-          exchange.sendResponseHeaders(200, file.length());
-
-          // 读取文件并写入响应体
-          OutputStream os = exchange.getResponseBody();
-          FileInputStream fs = new FileInputStream(file);
-          final byte[] buffer = new byte[0x10000];
-          int count = 0;
-          while ((count = fs.read(buffer)) >= 0) {
-            os.write(buffer, 0, count);
-          }
-          fs.close();
-          os.close();
+          // 支持Range断点续传和ETag/Last-Modified条件请求
+          FileResponder.send(exchange, file, "application/octet-stream", file.getName());
+        } else if ((zipDir = virtualZipDir(file)) != null) {
+          sendDirAsZip(exchange, zipDir);
         } else {
           // 如果文件不存在，返回404错误，响应体为"404 (Not Found)，可能文件已被删除，请重新执行查询“
           String response = "404 (Not Found)，可能文件已被删除，请重新执行查询";
@@ -124,6 +288,45 @@ public class SimpleFileServer {
         exchange.getResponseBody().close();
       }
     }
+
+    /**
+     * 没有生成实体压缩包时，导出文件夹下的all_file.zip由文件夹中的文件实时压缩得到。
+     *
+     * <p>只有根目录的直接子文件夹才是导出文件夹。根目录本身、图页面所在的graphs目录，以及通过..指向根目录之外的路径都不压缩。
+     *
+     * @return 要压缩的导出文件夹，不是导出文件夹下的all_file.zip时返回null
+     */
+    private File virtualZipDir(File file) throws IOException {
+      if (!file.getName().equals(ZipStreamer.ALL_FILE_ZIP) || file.getParentFile() == null) {
+        return null;
+      }
+      File dir = file.getParentFile().getCanonicalFile();
+      File base = new File(basePath).getCanonicalFile();
+      if (!base.equals(dir.getParentFile())
+          || !dir.isDirectory()
+          || dir.getName().equals(PREFIX_GRAPH.substring(1))
+          || dir.getName().startsWith(".")) {
+        return null;
+      }
+      return dir;
+    }
+
+    private void sendDirAsZip(HttpExchange exchange, File dir) throws IOException {
+      File[] files =
+          dir.listFiles(f -> f.isFile() && !f.getName().equals(ZipStreamer.ALL_FILE_ZIP));
+      List<File> fileList =
+          files == null ? new ArrayList<>() : new ArrayList<>(Arrays.asList(files));
+      fileList.sort(Comparator.comparing(File::getName));
+      exchange.getResponseHeaders().set("Content-Type", "application/zip");
+      exchange
+          .getResponseHeaders()
+          .set("Content-Disposition", "attachment; filename=\"" + ZipStreamer.ALL_FILE_ZIP + "\"");
+      // 长度未知，使用chunked编码边压缩边发送
+      exchange.sendResponseHeaders(200, 0);
+      try (OutputStream os = new BufferedOutputStream(exchange.getResponseBody(), 64 * 1024)) {
+        ZipStreamer.writeZip(fileList, os, zipLevel);
+      }
+    }
   }
 
   /** upload csv file handler */
@@ -136,71 +339,41 @@ public class SimpleFileServer {
 
     @Override
     public void handle(HttpExchange exchange) {
-
-      String zeppelinUrl = "", noteBookId = "", paragraphId = "", fileName = "";
-      BufferedWriter bw = null;
-      BufferedReader br = null;
-      String line;
-      boolean isContent = false;
       try {
         if (!"POST".equals(exchange.getRequestMethod())) {
           exchange.sendResponseHeaders(405, -1);
           return;
         }
         exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        String boundary =
+            MultipartParser.parseBoundary(exchange.getRequestHeaders().getFirst("Content-Type"));
+        if (boundary == null) {
+          sendText(exchange, 400, "Bad Request: multipart/form-data expected");
+          return;
+        }
         File uploadDir = new File(HttpUtil.getCurrentPath(basePath));
         if (!uploadDir.exists()) {
           uploadDir.mkdirs();
         }
-        br =
-            new BufferedReader(
-                new InputStreamReader(new BufferedInputStream(exchange.getRequestBody())));
         /* parse form-data */
-        while ((line = br.readLine()) != null) {
-          LOGGER.debug(line);
-          if (isContent) {
-            if (line.trim().isEmpty()) {
-              break;
-            }
-            bw.write(line);
-            bw.newLine();
-          }
-          if (line.startsWith("------")) {
-            line = br.readLine();
-            if (line.contains("filename=")) {
-              fileName = line.substring(line.indexOf("filename=") + 10, line.length() - 1);
-              br.readLine();
-              br.readLine();
-              isContent = true;
-              bw =
-                  new BufferedWriter(
-                      new OutputStreamWriter(
-                          Files.newOutputStream(new File(uploadDir, fileName).toPath())));
-            } else {
-              String paramName = line.substring(line.indexOf("name=") + 6, line.length() - 1);
-              br.readLine();
-              switch (paramName) {
-                case "zeppelinUrl":
-                  zeppelinUrl = br.readLine().trim();
-                  break;
-                case "noteBookId":
-                  noteBookId = br.readLine().trim();
-                  break;
-                case "paragraphId":
-                  paragraphId = br.readLine().trim();
-                  break;
-                default:
-                  LOGGER.warn("unexpected params received {}", br.readLine().trim());
-                  break;
-              }
-            }
-          }
-        }
-        if (bw != null) {
-          bw.close();
+        MultipartParser.Result form;
+        try (InputStream body = exchange.getRequestBody()) {
+          form = new MultipartParser(body, boundary, uploadFileMaxSize).parse(uploadDir);
+        } catch (MultipartParser.UploadTooLargeException e) {
+          LOGGER.warn("reject upload: {}", e.getMessage());
+          sendText(exchange, 413, e.getMessage());
+          return;
         }
+        String zeppelinUrl = form.getField("zeppelinUrl");
+        String noteBookId = form.getField("noteBookId");
+        String paragraphId = form.getField("paragraphId");
         LOGGER.info(
-            "received parameters:{},{},{},{}", zeppelinUrl, noteBookId, paragraphId, fileName);
+            "received parameters:{},{},{},{}, {} bytes",
+            zeppelinUrl,
+            noteBookId,
+            paragraphId,
+            form.getFileName(),
+            form.getFileSize());
         String result =
             HttpUtil.sendPost(
                 String.format("%s/api/notebook/run/%s/%s", zeppelinUrl, noteBookId, paragraphId),
@@ -209,7 +382,11 @@ public class SimpleFileServer {
         exchange.sendResponseHeaders(200, 0);
       } catch (IOException e) {
         LOGGER.error("Error uploading file", e);
-        throw new RuntimeException(e);
+        try {
+          sendText(exchange, 400, "Upload failed: " + e.getMessage());
+        } catch (IOException ignored) {
+          // 响应头可能已经发送
+        }
       } finally {
         exchange.close();
         cleanUpLoadDir();
@@ -217,11 +394,23 @@ public class SimpleFileServer {
     }
   }
 
+  private static void sendText(HttpExchange exchange, int code, String text) throws IOException {
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    exchange.sendResponseHeaders(code, bytes.length);
+    try (OutputStream os = exchange.getResponseBody()) {
+      os.write(bytes);
+    }
+  }
+
   static class GraphHandler implements HttpHandler {
     private String basePath;
+    private GraphCache graphCache;
 
-    public GraphHandler(String basePath) {
+    /** @param graphCache 解释器生成的图页面缓存，为null时只从磁盘读取 */
+    public GraphHandler(String basePath, GraphCache graphCache) {
       this.basePath = basePath;
+      this.graphCache = graphCache;
     }
 
     @Override
@@ -230,26 +419,14 @@ public class SimpleFileServer {
 
       // 获取请求的文件名，并构建文件路径
       String requestPath = exchange.getRequestURI().getPath();
+      String contentType = requestPath.endsWith("html") ? "text/html" : "text/plain";
+      GraphCache.Entry cached = graphCache == null ? null : graphCache.get(requestPath);
       File file = new File(basePath + requestPath);
-      if (file.exists() && !file.isDirectory()) {
-        // 设置响应头为文件下载
-        if (requestPath.endsWith("html")) {
-          exchange.getResponseHeaders().set("Content-Type", "text/html");
-        } else {
-          exchange.getResponseHeaders().set("Content-Type", "text/plain");
-        }
-        exchange.sendResponseHeaders(200, file.length());
-
-        // 读取文件并写入响应体
-        OutputStream os = exchange.getResponseBody();
-        FileInputStream fs = new FileInputStream(file);
-        final byte[] buffer = new byte[0x10000];
-        int count = 0;
-        while ((count = fs.read(buffer)) >= 0) {
-          os.write(buffer, 0, count);
-        }
-        fs.close();
-        os.close();
+      if (cached != null) {
+        FileResponder.sendCached(exchange, cached, contentType);
+      } else if (file.exists() && !file.isDirectory()) {
+        // 浏览器已缓存的图页面通过304直接复用
+        FileResponder.send(exchange, file, contentType, null);
       } else {
         String responseMeg = "404 (Not Found)，可能文件已被删除，请重新执行查询";
         exchange.sendResponseHeaders(404, responseMeg.length());
@@ -259,6 +436,70 @@ public class SimpleFileServer {
       }
     }
   }
+  /** 返回树状图中一个节点的一页子节点，参数为paragraph、path、offset和limit，结果为Highcharts节点的JSON数组 */
+  static class SubtreeHandler implements HttpHandler {
+    private static final int MAX_LIMIT = 5000;
+    private final GraphTreeStore store;
+
+    public SubtreeHandler(GraphTreeStore store) {
+      this.store = store;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      try {
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+        String paragraphId = params.get("paragraph");
+        String path = params.get("path");
+        int offset;
+        int limit;
+        try {
+          offset = Integer.parseInt(params.getOrDefault("offset", "0"));
+          limit = Math.min(MAX_LIMIT, Integer.parseInt(params.getOrDefault("limit", "200")));
+        } catch (NumberFormatException e) {
+          sendText(exchange, 400, "Bad Request: invalid offset or limit");
+          return;
+        }
+        if (paragraphId == null || path == null || offset < 0 || limit <= 0) {
+          sendText(exchange, 400, "Bad Request: paragraph and path are required");
+          return;
+        }
+        List<HighchartsTreeNode> page = store.childrenPage(paragraphId, path, offset, limit);
+        if (page == null) {
+          sendText(exchange, 404, "404 (Not Found)，可能树状图已过期，请重新执行查询");
+          return;
+        }
+        byte[] body = JSON.toJSONString(page).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+          os.write(body);
+        }
+      } finally {
+        exchange.close();
+      }
+    }
+
+    private static Map<String, String> parseQuery(String query) throws IOException {
+      Map<String, String> params = new HashMap<>();
+      if (query == null) {
+        return params;
+      }
+      for (String pair : query.split("&")) {
+        int eq = pair.indexOf('=');
+        if (eq <= 0) {
+          continue;
+        }
+        params.put(
+            URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+            URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+      }
+      return params;
+    }
+  }
+
   /** clean earliest files when upload file director exceeds 100GB */
   public void cleanUpLoadDir() {
     new Thread(
@@ -0,0 +1,346 @@
+package org.apache.zeppelin.iginx.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.apache.zeppelin.interpreter.thrift.InterpreterCompletion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 列路径目录，由后台线程通过SHOW COLUMNS定期刷新，用于编辑器中按Tab补全路径。
+ *
+ * <p>SHOW COLUMNS的结果按路径排序后保存在数组中，排序数组即一棵隐式的前缀树：同一前缀的路径位于连续区间，补全时二分查找区间并跳过同一路径段下的后代，无需逐个节点分配对象。
+ *
+ * <p>通过解释器执行的写操作标记目录需要刷新：INSERT只重新读取目标路径下的列并合并，其余写操作重新读取全部列。两次刷新之间至少间隔minRefreshIntervalMs。
+ *
+ * <p>每次写操作使写版本号加一，快照记录开始读取时的写版本号。快照的版本号与当前写版本号一致且未超过TTL时，可以代替IGinX回答SHOW COLUMNS。
+ */
+public class ColumnCatalog {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ColumnCatalog.class);
+  private static final String COMPLETION_META = "path";
+  private static final Comparator<String[]> BY_PATH = Comparator.comparing(row -> row[0]);
+
+  /** 读取列信息，返回SHOW COLUMNS的结果，第一行为表头 */
+  public interface Loader {
+    /** @param prefix 为null时读取全部列，否则读取prefix下的列 */
+    List<List<String>> load(String prefix) throws Exception;
+  }
+
+  private final Loader loader;
+  private final long refreshIntervalMs;
+  private final long minRefreshIntervalMs;
+  private final ScheduledExecutorService scheduler;
+
+  // 按路径排序的SHOW COLUMNS结果，刷新时整体替换
+  private volatile Snapshot snapshot = new Snapshot(Collections.emptyList(), new String[0][], 0, 0);
+
+  // 以下字段由this保护
+  private final Set<String> dirtyPrefixes = new HashSet<>();
+  private boolean fullRefreshPending = false;
+  private boolean refreshScheduled = false;
+  private long lastRefreshTime = 0;
+  private long writeVersion = 0;
+
+  /**
+   * @param loader 读取列信息
+   * @param refreshIntervalMs 定期全量刷新的间隔，小于等于0时只在写操作后刷新
+   * @param minRefreshIntervalMs 两次刷新之间的最小间隔
+   */
+  public ColumnCatalog(Loader loader, long refreshIntervalMs, long minRefreshIntervalMs) {
+    this.loader = loader;
+    this.refreshIntervalMs = refreshIntervalMs;
+    this.minRefreshIntervalMs = Math.max(0, minRefreshIntervalMs);
+    ScheduledThreadPoolExecutor executor =
+        new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("iginx-column-catalog"));
+    executor.setRemoveOnCancelPolicy(true);
+    this.scheduler = executor;
+  }
+
+  /** 立即开始第一次全量读取，之后按refreshIntervalMs定期刷新 */
+  public void start() {
+    requestFullRefresh();
+    if (refreshIntervalMs > 0) {
+      scheduler.scheduleWithFixedDelay(
+          this::requestFullRefresh, refreshIntervalMs, refreshIntervalMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  public void close() {
+    scheduler.shutdownNow();
+  }
+
+  /** 全部列可能已变化，如DELETE COLUMNS、LOAD DATA等 */
+  public synchronized void markAllDirty() {
+    writeVersion++;
+    requestFullRefresh();
+  }
+
+  /** prefix下的列可能已变化，如INSERT INTO prefix(...) */
+  public synchronized void markDirty(String prefix) {
+    if (prefix == null || prefix.isEmpty()) {
+      markAllDirty();
+      return;
+    }
+    writeVersion++;
+    dirtyPrefixes.add(prefix);
+    scheduleRefresh();
+  }
+
+  /** 当前目录中的列 */
+  public Snapshot getSnapshot() {
+    return snapshot;
+  }
+
+  /**
+   * 读取之后没有写操作、且读取时间未超过ttlMs的快照
+   *
+   * @return 快照已过期时返回null，超过TTL时在后台重新读取
+   */
+  public Snapshot getFreshSnapshot(long ttlMs) {
+    Snapshot current = snapshot;
+    synchronized (this) {
+      if (current.version != writeVersion) {
+        return null;
+      }
+      if (System.currentTimeMillis() - current.loadTime > ttlMs) {
+        requestFullRefresh();
+        return null;
+      }
+    }
+    return current;
+  }
+
+  /** 定期刷新或快照超过TTL时重新读取全部列，不改变写版本号 */
+  private synchronized void requestFullRefresh() {
+    fullRefreshPending = true;
+    scheduleRefresh();
+  }
+
+  private void scheduleRefresh() {
+    if (refreshScheduled || scheduler.isShutdown()) {
+      return;
+    }
+    refreshScheduled = true;
+    long delay = Math.max(0, lastRefreshTime + minRefreshIntervalMs - System.currentTimeMillis());
+    scheduler.schedule(this::refresh, delay, TimeUnit.MILLISECONDS);
+  }
+
+  private void refresh() {
+    boolean full;
+    List<String> prefixes;
+    long version;
+    synchronized (this) {
+      refreshScheduled = false;
+      lastRefreshTime = System.currentTimeMillis();
+      version = writeVersion;
+      full = fullRefreshPending;
+      prefixes = new ArrayList<>(dirtyPrefixes);
+      fullRefreshPending = false;
+      dirtyPrefixes.clear();
+    }
+    try {
+      if (full) {
+        long loadTime = System.currentTimeMillis();
+        List<List<String>> result = loader.load(null);
+        snapshot = build(headerOf(result), toRows(result), new String[0][], version, loadTime);
+      } else {
+        // 所有前缀合并完成后再发布，避免发布只合并了部分前缀的快照
+        Snapshot next = snapshot;
+        for (String prefix : prefixes) {
+          next = merge(next, prefix, loader.load(prefix), version);
+        }
+        snapshot = next;
+      }
+    } catch (Exception e) {
+      LOGGER.warn("refresh column catalog error", e);
+      // 失败后按最小间隔重试
+      synchronized (this) {
+        if (full) {
+          fullRefreshPending = true;
+        } else {
+          dirtyPrefixes.addAll(prefixes);
+        }
+        scheduleRefresh();
+      }
+    }
+  }
+
+  /** 用prefix下新读取的列替换快照中prefix下的列 */
+  private static Snapshot merge(
+      Snapshot current, String prefix, List<List<String>> result, long version) {
+    String[][] rows = current.rows;
+    String start = prefix + ".";
+    int from = lowerBound(rows, start);
+    int to = lowerBound(rows, prefix + "/");
+    String[][] kept = new String[rows.length - (to - from)][];
+    System.arraycopy(rows, 0, kept, 0, from);
+    System.arraycopy(rows, to, kept, from, rows.length - to);
+    List<String> header = current.header.isEmpty() ? headerOf(result) : current.header;
+    return build(header, toRows(result), kept, version, current.loadTime);
+  }
+
+  private static List<String> headerOf(List<List<String>> result) {
+    return result.isEmpty() ? Collections.emptyList() : result.get(0);
+  }
+
+  private static String[][] toRows(List<List<String>> result) {
+    String[][] rows = new String[Math.max(0, result.size() - 1)][];
+    for (int i = 1; i < result.size(); i++) {
+      rows[i - 1] = result.get(i).toArray(new String[0]);
+    }
+    return rows;
+  }
+
+  private static Snapshot build(
+      List<String> header, String[][] loaded, String[][] kept, long version, long loadTime) {
+    Arrays.sort(loaded, BY_PATH);
+    String[][] rows = new String[loaded.length + kept.length][];
+    // 两个有序数组归并
+    int i = 0;
+    int j = 0;
+    int k = 0;
+    while (i < loaded.length || j < kept.length) {
+      if (j == kept.length || (i < loaded.length && loaded[i][0].compareTo(kept[j][0]) <= 0)) {
+        rows[k++] = loaded[i++];
+      } else {
+        rows[k++] = kept[j++];
+      }
+    }
+    return new Snapshot(
+        Collections.unmodifiableList(new ArrayList<>(header)), rows, version, loadTime);
+  }
+
+  /**
+   * 补全光标前的路径
+   *
+   * @param buf 编辑器中的全部文本
+   * @param cursor 光标位置
+   * @param limit 最多返回的候选数
+   * @return 光标所在路径段的候选值
+   */
+  public List<InterpreterCompletion> complete(String buf, int cursor, int limit) {
+    if (buf == null) {
+      return Collections.emptyList();
+    }
+    int end = Math.min(Math.max(cursor, 0), buf.length());
+    int start = end;
+    while (start > 0 && isPathChar(buf.charAt(start - 1))) {
+      start--;
+    }
+    String word = buf.substring(start, end);
+    int dot = word.lastIndexOf('.');
+    String parent = dot < 0 ? "" : word.substring(0, dot + 1);
+
+    String[][] rows = snapshot.rows;
+    Set<String> segments = new LinkedHashSet<>();
+    int i = lowerBound(rows, word);
+    while (i < rows.length && segments.size() < limit) {
+      String path = rows[i][0];
+      if (!path.startsWith(word)) {
+        break;
+      }
+      int next = path.indexOf('.', parent.length());
+      String segment = path.substring(parent.length(), next < 0 ? path.length() : next);
+      segments.add(segment);
+      // 该路径段的后代在排序数组中连续，跳到其后
+      i = next < 0 ? i + 1 : lowerBound(rows, parent + segment + "/");
+    }
+    List<InterpreterCompletion> completions = new ArrayList<>(segments.size());
+    for (String segment : segments) {
+      completions.add(new InterpreterCompletion(segment, segment, COMPLETION_META));
+    }
+    return completions;
+  }
+
+  private static boolean isPathChar(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '-' || c == '$';
+  }
+
+  /** 第一个路径不小于key的下标 */
+  static int lowerBound(String[][] rows, String key) {
+    int lo = 0;
+    int hi = rows.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (rows[mid][0].compareTo(key) < 0) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /** 某一时刻的目录内容，创建后不再修改 */
+  public static class Snapshot {
+    private final List<String> header;
+    private final String[][] rows;
+    private final long version;
+    private final long loadTime;
+
+    private Snapshot(List<String> header, String[][] rows, long version, long loadTime) {
+      this.header = header;
+      this.rows = rows;
+      this.version = version;
+      this.loadTime = loadTime;
+    }
+
+    /** 开始读取时的写版本号 */
+    public long getVersion() {
+      return version;
+    }
+
+    /**
+     * 在快照中执行SHOW COLUMNS
+     *
+     * @param patterns 路径模式，为空时返回全部列
+     * @return 与SHOW COLUMNS相同格式的结果，第一行为表头，其余行按路径排序
+     */
+    public List<List<String>> select(List<PathPattern> patterns) {
+      List<List<String>> result = new ArrayList<>();
+      result.add(header);
+      if (patterns.isEmpty()) {
+        for (String[] row : rows) {
+          result.add(Arrays.asList(row));
+        }
+        return result;
+      }
+      // 多个模式可能匹配同一列，按下标去重后保持路径顺序
+      BitSet matched = new BitSet(rows.length);
+      for (PathPattern pattern : patterns) {
+        String prefix = pattern.getPrefix();
+        for (int i = lowerBound(rows, prefix);
+            i < rows.length && rows[i][0].startsWith(prefix);
+            i++) {
+          if (pattern.matches(rows[i][0])) {
+            matched.set(i);
+          }
+        }
+      }
+      for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+        result.add(Arrays.asList(rows[i]));
+      }
+      return result;
+    }
+
+    /** SHOW COLUMNS结果的表头 */
+    public List<String> getHeader() {
+      return header;
+    }
+
+    /** 按路径排序的行，第一列为路径 */
+    public String[][] getRows() {
+      return rows;
+    }
+  }
+}
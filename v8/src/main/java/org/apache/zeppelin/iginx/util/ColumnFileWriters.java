@@ -0,0 +1,203 @@
+package org.apache.zeppelin.iginx.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * AS STREAM导出时每列对应一个文件，为每个列文件保持一个打开的FileChannel，按批次追加写入。
+ *
+ * <p>同一批次中不同的列分组后由线程池并行写入，同一列始终由一个任务按行顺序写入。较小的值先拷贝到复用的直接缓冲区，再以聚集写一次写出多个缓冲区，超过缓冲区大小的值直接包装后参与聚集写。
+ */
+public class ColumnFileWriters implements Closeable {
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int BUFFERS_PER_WRITE = 16;
+
+  private final String[] paths;
+  private final FileChannel[] channels;
+  private final ExecutorService workerPool;
+  private final int parallelism;
+  private final BlockingQueue<ByteBuffer> bufferPool;
+
+  /**
+   * @param paths 每列的文件路径，空字符串表示该列不导出（如key列）
+   * @param workerPool 写入列文件的线程池，为null时在调用线程中写入
+   * @param parallelism 每批次最多拆分的任务数
+   */
+  public ColumnFileWriters(String[] paths, ExecutorService workerPool, int parallelism) {
+    this.paths = paths;
+    this.channels = new FileChannel[paths.length];
+    this.workerPool = workerPool;
+    this.parallelism = workerPool == null ? 1 : Math.max(1, parallelism);
+    this.bufferPool = new ArrayBlockingQueue<>(this.parallelism * BUFFERS_PER_WRITE);
+  }
+
+  /**
+   * 将一批结果按列追加到文件，全部列写完后返回
+   *
+   * @param batch 每行为一个List<byte[]>，每列为一个byte[]，值为null时跳过
+   */
+  public void write(List<List<byte[]>> batch) throws IOException {
+    if (batch.isEmpty()) {
+      return;
+    }
+    if (parallelism == 1) {
+      writeColumns(batch, 0, 1);
+      return;
+    }
+    List<Future<Void>> futures = new ArrayList<>(parallelism);
+    try {
+      for (int group = 0; group < parallelism; group++) {
+        int start = group;
+        futures.add(workerPool.submit(() -> writeColumns(batch, start, parallelism)));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while writing column files");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException("Failed to write column files: " + cause.getMessage(), cause);
+    } finally {
+      for (Future<Void> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  /** 写入下标为start, start + step, ...的列 */
+  private Void writeColumns(List<List<byte[]>> batch, int start, int step) throws IOException {
+    ByteBuffer[] gather = new ByteBuffer[BUFFERS_PER_WRITE];
+    for (int column = start; column < paths.length; column += step) {
+      if (paths[column].isEmpty()) {
+        continue;
+      }
+      writeColumn(batch, column, gather);
+    }
+    return null;
+  }
+
+  private void writeColumn(List<List<byte[]>> batch, int column, ByteBuffer[] gather)
+      throws IOException {
+    int count = 0;
+    ByteBuffer current = null;
+    try {
+      for (List<byte[]> row : batch) {
+        byte[] value = row.get(column);
+        if (value == null || value.length == 0) {
+          continue;
+        }
+        if (value.length > BUFFER_SIZE) {
+          // 大值不拷贝，直接包装后参与聚集写
+          if (count == BUFFERS_PER_WRITE) {
+            count = flush(column, gather, count);
+          }
+          gather[count++] = ByteBuffer.wrap(value);
+          current = null;
+          continue;
+        }
+        if (current == null || current.remaining() < value.length) {
+          if (count == BUFFERS_PER_WRITE) {
+            count = flush(column, gather, count);
+          }
+          current = acquireBuffer();
+          gather[count++] = current;
+        }
+        current.put(value);
+      }
+      flush(column, gather, count);
+    } finally {
+      for (int i = 0; i < gather.length; i++) {
+        releaseBuffer(gather[i]);
+        gather[i] = null;
+      }
+    }
+  }
+
+  /** 以聚集写写出gather中的前count个缓冲区，写完后归还直接缓冲区 */
+  private int flush(int column, ByteBuffer[] gather, int count) throws IOException {
+    if (count == 0) {
+      return 0;
+    }
+    for (int i = 0; i < count; i++) {
+      if (gather[i].isDirect()) {
+        gather[i].flip();
+      }
+    }
+    FileChannel channel = channel(column);
+    long remaining = 0;
+    for (int i = 0; i < count; i++) {
+      remaining += gather[i].remaining();
+    }
+    while (remaining > 0) {
+      remaining -= channel.write(gather, 0, count);
+    }
+    for (int i = 0; i < count; i++) {
+      releaseBuffer(gather[i]);
+      gather[i] = null;
+    }
+    return 0;
+  }
+
+  private FileChannel channel(int column) throws IOException {
+    if (channels[column] == null) {
+      channels[column] =
+          FileChannel.open(
+              Paths.get(paths[column]),
+              StandardOpenOption.CREATE,
+              StandardOpenOption.WRITE,
+              StandardOpenOption.APPEND);
+    }
+    return channels[column];
+  }
+
+  private ByteBuffer acquireBuffer() {
+    ByteBuffer buffer = bufferPool.poll();
+    if (buffer == null) {
+      return ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+    buffer.clear();
+    return buffer;
+  }
+
+  private void releaseBuffer(ByteBuffer buffer) {
+    if (buffer != null && buffer.isDirect()) {
+      bufferPool.offer(buffer);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    IOException exception = null;
+    for (int i = 0; i < channels.length; i++) {
+      if (channels[i] == null) {
+        continue;
+      }
+      try {
+        channels[i].close();
+      } catch (IOException e) {
+        exception = e;
+      }
+      channels[i] = null;
+    }
+    if (exception != null) {
+      throw exception;
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package org.apache.zeppelin.iginx.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 按块顺序读取CSV文件，每块在记录边界（双引号之外的换行符）处结束，使大文件可以分多次发送给IGinX，内存占用只与块大小有关。
+ *
+ * <p>文件带表头时，表头会被添加到每一块的开头，使每块都是一个完整的CSV文件。单条记录超过块大小时，该块会扩大到能容纳这条记录。
+ */
+public class CsvChunkReader implements Closeable {
+  private final FileChannel channel;
+  private final boolean hasHeader;
+  private final int chunkSize;
+
+  private byte[] header = new byte[0];
+  private byte[] buffer;
+  // buffer中[0, limit)为已读取但尚未返回的数据
+  private int limit = 0;
+  private boolean eof = false;
+  private long chunkCount = 0;
+
+  /**
+   * @param file CSV文件
+   * @param chunkSize 每块的字节数
+   * @param hasHeader 文件第一条记录是否为表头
+   */
+  public CsvChunkReader(File file, int chunkSize, boolean hasHeader) throws IOException {
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    this.hasHeader = hasHeader;
+    this.chunkSize = Math.max(1, chunkSize);
+    this.buffer = new byte[this.chunkSize];
+  }
+
+  /**
+   * 读取下一块
+   *
+   * @return 下一块数据，文件读完后返回null
+   */
+  public ByteBuffer nextChunk() throws IOException {
+    if (chunkCount == 0 && hasHeader) {
+      int headerEnd = readRecordEnd(true);
+      header = Arrays.copyOf(buffer, headerEnd);
+      consume(headerEnd);
+    }
+    int end = readRecordEnd(false);
+    if (end == 0) {
+      // 只有表头的文件仍发送一次表头，与整体发送时的行为一致
+      if (chunkCount == 0 && header.length > 0) {
+        chunkCount++;
+        return ByteBuffer.wrap(header);
+      }
+      return null;
+    }
+    byte[] chunk = new byte[header.length + end];
+    System.arraycopy(header, 0, chunk, 0, header.length);
+    System.arraycopy(buffer, 0, chunk, header.length, end);
+    consume(end);
+    chunkCount++;
+    return ByteBuffer.wrap(chunk);
+  }
+
+  /** 已返回的块数 */
+  public long getChunkCount() {
+    return chunkCount;
+  }
+
+  /**
+   * 填充buffer，返回最后一个记录边界；buffer内没有记录边界时扩大buffer继续读取
+   *
+   * @param firstRecordOnly 是否只读取第一条记录
+   * @return 记录边界之后的位置，文件已读完时返回剩余数据的长度
+   */
+  private int readRecordEnd(boolean firstRecordOnly) throws IOException {
+    int scanned = 0;
+    boolean inQuote = false;
+    int boundary = -1;
+    while (true) {
+      fill();
+      for (int i = scanned; i < limit; i++) {
+        byte b = buffer[i];
+        if (b == '"') {
+          inQuote = !inQuote;
+        } else if (b == '\n' && !inQuote) {
+          boundary = i + 1;
+          if (firstRecordOnly) {
+            return boundary;
+          }
+        }
+      }
+      scanned = limit;
+      if (eof) {
+        return limit;
+      }
+      if (boundary > 0) {
+        return boundary;
+      }
+      buffer = Arrays.copyOf(buffer, buffer.length * 2);
+    }
+  }
+
+  private void fill() throws IOException {
+    while (!eof && limit < buffer.length) {
+      int read = channel.read(ByteBuffer.wrap(buffer, limit, buffer.length - limit));
+      if (read < 0) {
+        eof = true;
+      } else {
+        limit += read;
+      }
+    }
+  }
+
+  private void consume(int length) {
+    System.arraycopy(buffer, length, buffer, 0, limit - length);
+    limit -= length;
+    if (buffer.length > chunkSize && limit <= chunkSize) {
+      buffer = Arrays.copyOf(buffer, chunkSize);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
@@ -0,0 +1,85 @@
+package org.apache.zeppelin.iginx.util;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/** 将查询结果按行写入CSV文件，字段中包含逗号、引号或换行时按RFC 4180加引号转义 */
+public class CsvResultWriter implements Closeable {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final BufferedWriter writer;
+  private long rows = 0;
+
+  public CsvResultWriter(File file) throws IOException {
+    Files.createDirectories(file.toPath().toAbsolutePath().getParent());
+    this.writer =
+        new BufferedWriter(
+            new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8),
+            BUFFER_SIZE);
+  }
+
+  public void writeRow(String[] values) throws IOException {
+    for (int i = 0; i < values.length; i++) {
+      if (i != 0) {
+        writer.write(',');
+      }
+      writeField(values[i]);
+    }
+    writer.write('\n');
+    rows++;
+  }
+
+  public void writeRow(List<String> values) throws IOException {
+    for (int i = 0; i < values.size(); i++) {
+      if (i != 0) {
+        writer.write(',');
+      }
+      writeField(values.get(i));
+    }
+    writer.write('\n');
+    rows++;
+  }
+
+  /** 已写入的行数，包含表头 */
+  public long getRows() {
+    return rows;
+  }
+
+  private void writeField(String value) throws IOException {
+    if (value == null) {
+      return;
+    }
+    boolean needQuote = false;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+        needQuote = true;
+        break;
+      }
+    }
+    if (!needQuote) {
+      writer.write(value);
+      return;
+    }
+    writer.write('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"') {
+        writer.write('"');
+      }
+      writer.write(c);
+    }
+    writer.write('"');
+  }
+
+  @Override
+  public void close() throws IOException {
+    writer.close();
+  }
+}
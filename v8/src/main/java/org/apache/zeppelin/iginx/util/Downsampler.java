@@ -0,0 +1,305 @@
+package org.apache.zeppelin.iginx.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 对查询结果中的数值列降采样，用于折线图等图表展示。逐行输入，内存占用只与目标点数有关，与结果行数无关。
+ *
+ * <p>按行数分桶，每个桶记录各数值列最小值和最大值所在的行，桶数达到上限时相邻的桶两两合并、桶宽加倍。MINMAX直接输出各桶的极值行；LTTB先按目标点数的4倍预选极值行，
+ * 结束时再对每列的预选点执行LTTB（Largest-Triangle-Three-Buckets），即MinMaxLTTB。
+ *
+ * <p>每列各自选点，输出所有列选中行的并集，按原顺序排列，行内其他列保持原值。结果不超过目标点数时原样输出。
+ */
+public class Downsampler {
+  public enum Method {
+    LTTB,
+    MINMAX
+  }
+
+  private static final int LTTB_PRESELECT_RATIO = 4;
+
+  private final Method method;
+  private final int targetPoints;
+  private final int maxBuckets;
+  private final boolean hasKey;
+  private final int columns;
+
+  private final List<Bucket> buckets = new ArrayList<>();
+  private Bucket current = null;
+  private long bucketWidth = 1;
+  // 结果不超过目标点数时原样输出，超过后释放
+  private List<Point> head = new ArrayList<>();
+  private Point first = null;
+  private Point last = null;
+  private long rows = 0;
+
+  /**
+   * @param method 降采样方法
+   * @param targetPoints 每列的目标点数
+   * @param columns 列数，包含key列
+   * @param hasKey 第一列是否为key列，是则以key为横轴，否则以行号为横轴
+   */
+  public Downsampler(Method method, int targetPoints, int columns, boolean hasKey) {
+    this.method = method;
+    this.targetPoints = Math.max(3, targetPoints);
+    // 每个桶为每列贡献最小值和最大值两个点
+    int points =
+        method == Method.LTTB ? this.targetPoints * LTTB_PRESELECT_RATIO : this.targetPoints;
+    this.maxBuckets = Math.max(2, (points / 2) & ~1);
+    this.hasKey = hasKey;
+    this.columns = columns;
+  }
+
+  /**
+   * 输入一行
+   *
+   * @param raw QueryDataSet返回的原始值，数值列为Number
+   * @param formatted 格式化后的值，输出时使用
+   */
+  public void add(Object[] raw, String[] formatted) {
+    double x = hasKey && raw[0] instanceof Number ? ((Number) raw[0]).doubleValue() : rows;
+    double[] y = new double[columns];
+    for (int i = 0; i < columns; i++) {
+      y[i] =
+          (i == 0 && hasKey) || !(raw[i] instanceof Number)
+              ? Double.NaN
+              : ((Number) raw[i]).doubleValue();
+    }
+    Point point = new Point(rows++, x, y, formatted);
+    if (first == null) {
+      first = point;
+    }
+    last = point;
+    if (head != null) {
+      head.add(point);
+      if (head.size() > targetPoints) {
+        head = null;
+      }
+    }
+    if (current == null || current.count == bucketWidth) {
+      if (current != null) {
+        buckets.add(current);
+        if (buckets.size() >= maxBuckets) {
+          compact();
+        }
+      }
+      current = new Bucket(columns);
+    }
+    current.add(point);
+  }
+
+  /** 已输入的行数 */
+  public long getRows() {
+    return rows;
+  }
+
+  /** 结束输入，返回降采样后的行 */
+  public List<String[]> finish() {
+    if (head != null) {
+      return toRows(head);
+    }
+    if (current != null) {
+      buckets.add(current);
+      current = null;
+    }
+    Map<Point, Boolean> selected = new IdentityHashMap<>();
+    selected.put(first, true);
+    selected.put(last, true);
+    for (Bucket bucket : buckets) {
+      if (!bucket.hasValues()) {
+        // 桶内没有数值，保留第一行，不留空隙
+        selected.put(bucket.first, true);
+      } else if (method == Method.MINMAX) {
+        for (int c = 0; c < columns; c++) {
+          if (bucket.min[c] != null) {
+            selected.put(bucket.min[c], true);
+            selected.put(bucket.max[c], true);
+          }
+        }
+      }
+    }
+    if (method == Method.LTTB) {
+      for (int c = 0; c < columns; c++) {
+        for (Point point : lttb(preselected(c), c, targetPoints)) {
+          selected.put(point, true);
+        }
+      }
+    }
+    List<Point> points = new ArrayList<>(selected.keySet());
+    points.sort(Comparator.comparingLong(point -> point.seq));
+    return toRows(points);
+  }
+
+  /** 第c列的预选点，按原顺序排列 */
+  private List<Point> preselected(int c) {
+    List<Point> points = new ArrayList<>(buckets.size() * 2 + 2);
+    if (!Double.isNaN(first.y[c])) {
+      points.add(first);
+    }
+    for (Bucket bucket : buckets) {
+      Point min = bucket.min[c];
+      Point max = bucket.max[c];
+      if (min == null) {
+        continue;
+      }
+      Point earlier = min.seq <= max.seq ? min : max;
+      Point later = min.seq <= max.seq ? max : min;
+      addIfAfter(points, earlier);
+      addIfAfter(points, later);
+    }
+    if (!Double.isNaN(last.y[c])) {
+      addIfAfter(points, last);
+    }
+    return points;
+  }
+
+  private static void addIfAfter(List<Point> points, Point point) {
+    if (points.isEmpty() || points.get(points.size() - 1).seq < point.seq) {
+      points.add(point);
+    }
+  }
+
+  /** 相邻的桶两两合并，桶宽加倍 */
+  private void compact() {
+    int merged = 0;
+    for (int i = 0; i < buckets.size(); i += 2) {
+      Bucket bucket = buckets.get(i);
+      if (i + 1 < buckets.size()) {
+        bucket.merge(buckets.get(i + 1));
+      }
+      buckets.set(merged++, bucket);
+    }
+    buckets.subList(merged, buckets.size()).clear();
+    bucketWidth *= 2;
+  }
+
+  /** 从points中按第c列选出threshold个点，保留首尾两点 */
+  private static List<Point> lttb(List<Point> points, int c, int threshold) {
+    int size = points.size();
+    if (threshold >= size || threshold < 3) {
+      return points;
+    }
+    double originX = points.get(0).x;
+    List<Point> sampled = new ArrayList<>(threshold);
+    double every = (double) (size - 2) / (threshold - 2);
+    int a = 0;
+    sampled.add(points.get(0));
+    for (int i = 0; i < threshold - 2; i++) {
+      // 下一个桶的平均点
+      int avgStart = (int) (Math.floor((i + 1) * every) + 1);
+      int avgEnd = Math.min((int) (Math.floor((i + 2) * every) + 1), size);
+      double avgX = 0;
+      double avgY = 0;
+      for (int j = avgStart; j < avgEnd; j++) {
+        avgX += points.get(j).x - originX;
+        avgY += points.get(j).y[c];
+      }
+      avgX /= avgEnd - avgStart;
+      avgY /= avgEnd - avgStart;
+
+      // 当前桶中与上一个选中点、下一个桶平均点构成三角形面积最大的点
+      int rangeStart = (int) (Math.floor(i * every) + 1);
+      int rangeEnd = (int) (Math.floor((i + 1) * every) + 1);
+      double pointAX = points.get(a).x - originX;
+      double pointAY = points.get(a).y[c];
+      double maxArea = -1;
+      int next = rangeStart;
+      for (int j = rangeStart; j < rangeEnd; j++) {
+        double area =
+            Math.abs(
+                (pointAX - avgX) * (points.get(j).y[c] - pointAY)
+                    - (pointAX - (points.get(j).x - originX)) * (avgY - pointAY));
+        if (area > maxArea) {
+          maxArea = area;
+          next = j;
+        }
+      }
+      sampled.add(points.get(next));
+      a = next;
+    }
+    sampled.add(points.get(size - 1));
+    return sampled;
+  }
+
+  private static List<String[]> toRows(List<Point> points) {
+    List<String[]> rows = new ArrayList<>(points.size());
+    for (Point point : points) {
+      rows.add(point.row);
+    }
+    return rows;
+  }
+
+  private static class Point {
+    private final long seq;
+    private final double x;
+    private final double[] y;
+    private final String[] row;
+
+    private Point(long seq, double x, double[] y, String[] row) {
+      this.seq = seq;
+      this.x = x;
+      this.y = y;
+      this.row = row;
+    }
+  }
+
+  private static class Bucket {
+    private final Point[] min;
+    private final Point[] max;
+    private Point first = null;
+    private long count = 0;
+
+    private Bucket(int columns) {
+      this.min = new Point[columns];
+      this.max = new Point[columns];
+    }
+
+    private void add(Point point) {
+      if (first == null) {
+        first = point;
+      }
+      count++;
+      for (int c = 0; c < min.length; c++) {
+        double value = point.y[c];
+        if (Double.isNaN(value)) {
+          continue;
+        }
+        if (min[c] == null || value < min[c].y[c]) {
+          min[c] = point;
+        }
+        if (max[c] == null || value > max[c].y[c]) {
+          max[c] = point;
+        }
+      }
+    }
+
+    /** 合并后一个桶 */
+    private void merge(Bucket other) {
+      count += other.count;
+      for (int c = 0; c < min.length; c++) {
+        if (other.min[c] == null) {
+          continue;
+        }
+        if (min[c] == null || other.min[c].y[c] < min[c].y[c]) {
+          min[c] = other.min[c];
+        }
+        if (max[c] == null || other.max[c].y[c] > max[c].y[c]) {
+          max[c] = other.max[c];
+        }
+      }
+    }
+
+    private boolean hasValues() {
+      for (Point point : min) {
+        if (point != null) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
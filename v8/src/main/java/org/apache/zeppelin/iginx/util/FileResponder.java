@@ -0,0 +1,436 @@
+package org.apache.zeppelin.iginx.util;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 文件服务器的文件响应：支持ETag/Last-Modified条件请求（304）、单个和多个Range请求（206/416）以及HEAD请求，文件内容通过FileChannel.transferTo发送。
+ * 文本类型根据Accept-Encoding以gzip或deflate压缩发送。
+ *
+ * <p>HttpServer的响应体只是OutputStream，transferTo无法直接交给socket，JDK会经由一个小的直接缓冲区转发，但仍省去了堆上的读写缓冲区。
+ */
+public class FileResponder {
+  // 多个Range超过该数量时忽略Range，返回整个文件
+  private static final int MAX_RANGES = 32;
+  private static final String CRLF = "\r\n";
+  // 小于该大小的文件不压缩
+  private static final long MIN_COMPRESS_SIZE = 1024;
+  private static final int COMPRESS_BUFFER_SIZE = 64 * 1024;
+  private static final String GZIP = "gzip";
+  private static final String DEFLATE = "deflate";
+  public static final String GZIP_SUFFIX = ".gz";
+
+  private FileResponder() {}
+
+  /**
+   * 发送文件
+   *
+   * @param exchange 请求
+   * @param file 存在的文件
+   * @param contentType 响应的Content-Type
+   * @param attachmentName 不为null时以附件形式下载
+   */
+  public static void send(
+      HttpExchange exchange, File file, String contentType, String attachmentName)
+      throws IOException {
+    long length = file.length();
+    long lastModified = file.lastModified() / 1000 * 1000;
+    String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+    Headers requestHeaders = exchange.getRequestHeaders();
+    Headers responseHeaders = exchange.getResponseHeaders();
+    responseHeaders.set("ETag", etag);
+    responseHeaders.set("Last-Modified", formatHttpDate(lastModified));
+    responseHeaders.set("Accept-Ranges", "bytes");
+    boolean head = "HEAD".equals(exchange.getRequestMethod());
+    String range = requestHeaders.getFirst("Range");
+
+    String encoding = null;
+    if (isCompressible(contentType) && length >= MIN_COMPRESS_SIZE) {
+      responseHeaders.set("Vary", "Accept-Encoding");
+      // Range按未压缩的内容计算，此时不压缩
+      if (range == null) {
+        encoding = negotiateEncoding(requestHeaders.getFirst("Accept-Encoding"));
+      }
+      if (encoding != null) {
+        etag = etag.substring(0, etag.length() - 1) + "-" + encoding + "\"";
+        responseHeaders.set("ETag", etag);
+      }
+    }
+
+    if (notModified(requestHeaders, etag, lastModified)) {
+      exchange.sendResponseHeaders(304, -1);
+      exchange.close();
+      return;
+    }
+    if (attachmentName != null) {
+      responseHeaders.set("Content-Disposition", "attachment; filename=\"" + attachmentName + "\"");
+    }
+
+    if (encoding != null) {
+      sendCompressed(exchange, file, contentType, encoding, head);
+      return;
+    }
+
+    List<long[]> ranges = null;
+    if (range != null && ifRangeMatches(requestHeaders.getFirst("If-Range"), etag, lastModified)) {
+      ranges = parseRanges(range, length);
+      if (ranges != null && ranges.isEmpty()) {
+        responseHeaders.set("Content-Range", "bytes */" + length);
+        exchange.sendResponseHeaders(416, -1);
+        exchange.close();
+        return;
+      }
+    }
+
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      if (ranges == null) {
+        responseHeaders.set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, head ? -1 : length);
+        if (!head) {
+          try (OutputStream os = exchange.getResponseBody()) {
+            transfer(channel, 0, length, os);
+          }
+        }
+      } else if (ranges.size() == 1) {
+        long[] r = ranges.get(0);
+        responseHeaders.set("Content-Type", contentType);
+        responseHeaders.set("Content-Range", contentRange(r, length));
+        exchange.sendResponseHeaders(206, head ? -1 : r[1] - r[0] + 1);
+        if (!head) {
+          try (OutputStream os = exchange.getResponseBody()) {
+            transfer(channel, r[0], r[1] - r[0] + 1, os);
+          }
+        }
+      } else {
+        sendMultipleRanges(exchange, channel, ranges, length, contentType, head);
+      }
+    }
+  }
+
+  /**
+   * 发送缓存在内存中的图页面，客户端接受gzip时发送预先压缩的内容
+   *
+   * @param exchange 请求
+   * @param entry 缓存条目
+   * @param contentType 响应的Content-Type
+   */
+  public static void sendCached(HttpExchange exchange, GraphCache.Entry entry, String contentType)
+      throws IOException {
+    Headers requestHeaders = exchange.getRequestHeaders();
+    Headers responseHeaders = exchange.getResponseHeaders();
+    boolean gzip =
+        GZIP.equals(negotiateEncoding(requestHeaders.getFirst("Accept-Encoding")))
+            && entry.getRaw().length >= MIN_COMPRESS_SIZE;
+    String etag = "\"" + entry.getHash() + (gzip ? "-" + GZIP : "") + "\"";
+    responseHeaders.set("ETag", etag);
+    responseHeaders.set("Last-Modified", formatHttpDate(entry.getLastModified()));
+    responseHeaders.set("Vary", "Accept-Encoding");
+    if (notModified(requestHeaders, etag, entry.getLastModified())) {
+      exchange.sendResponseHeaders(304, -1);
+      exchange.close();
+      return;
+    }
+    byte[] body = gzip ? entry.getGzip() : entry.getRaw();
+    responseHeaders.set("Content-Type", contentType);
+    if (gzip) {
+      responseHeaders.set("Content-Encoding", GZIP);
+    }
+    boolean head = "HEAD".equals(exchange.getRequestMethod());
+    exchange.sendResponseHeaders(200, head ? -1 : body.length);
+    if (!head) {
+      try (OutputStream os = exchange.getResponseBody()) {
+        os.write(body);
+      }
+    }
+  }
+
+  /** gzip时优先使用写文件时生成的.gz文件，否则边读取边压缩，以chunked编码发送 */
+  private static void sendCompressed(
+      HttpExchange exchange, File file, String contentType, String encoding, boolean head)
+      throws IOException {
+    Headers responseHeaders = exchange.getResponseHeaders();
+    responseHeaders.set("Content-Type", contentType);
+    responseHeaders.set("Content-Encoding", encoding);
+    File precompressed = new File(file.getPath() + GZIP_SUFFIX);
+    if (GZIP.equals(encoding)
+        && precompressed.isFile()
+        && precompressed.lastModified() >= file.lastModified()) {
+      try (FileChannel channel =
+          FileChannel.open(precompressed.toPath(), StandardOpenOption.READ)) {
+        long length = channel.size();
+        exchange.sendResponseHeaders(200, head ? -1 : length);
+        if (!head) {
+          try (OutputStream os = exchange.getResponseBody()) {
+            transfer(channel, 0, length, os);
+          }
+        }
+      }
+      return;
+    }
+    if (head) {
+      exchange.sendResponseHeaders(200, -1);
+      return;
+    }
+    exchange.sendResponseHeaders(200, 0);
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        OutputStream os =
+            GZIP.equals(encoding)
+                ? new GZIPOutputStream(exchange.getResponseBody(), COMPRESS_BUFFER_SIZE)
+                : new DeflaterOutputStream(
+                    new BufferedOutputStream(exchange.getResponseBody(), COMPRESS_BUFFER_SIZE))) {
+      transfer(channel, 0, channel.size(), os);
+    }
+  }
+
+  /**
+   * 将文件压缩为同目录下的.gz文件，供之后的gzip请求直接发送
+   *
+   * @param file 已写完的文件
+   */
+  public static void precompress(File file) throws IOException {
+    File target = new File(file.getPath() + GZIP_SUFFIX);
+    File temp = new File(file.getPath() + GZIP_SUFFIX + ".tmp");
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        OutputStream os = new GZIPOutputStream(new FileOutputStream(temp), COMPRESS_BUFFER_SIZE)) {
+      transfer(channel, 0, channel.size(), os);
+    }
+    Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /** 文本类型压缩收益大，图片、压缩包等二进制文件不压缩 */
+  static boolean isCompressible(String contentType) {
+    String type = contentType.toLowerCase(Locale.ROOT);
+    return type.startsWith("text/")
+        || type.startsWith("application/json")
+        || type.startsWith("application/javascript")
+        || type.startsWith("application/xml");
+  }
+
+  /**
+   * 根据Accept-Encoding选择压缩方式
+   *
+   * @return gzip、deflate，客户端都不接受时返回null
+   */
+  static String negotiateEncoding(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return null;
+    }
+    // -1表示未列出
+    double gzip = -1;
+    double deflate = -1;
+    double any = 0;
+    for (String item : acceptEncoding.split(",")) {
+      String[] parts = item.trim().split(";");
+      String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+      double q = 1;
+      for (int i = 1; i < parts.length; i++) {
+        String param = parts[i].trim();
+        if (param.startsWith("q=")) {
+          try {
+            q = Double.parseDouble(param.substring(2));
+          } catch (NumberFormatException e) {
+            q = 0;
+          }
+        }
+      }
+      if (coding.equals(GZIP) || coding.equals("x-gzip")) {
+        gzip = q;
+      } else if (coding.equals(DEFLATE)) {
+        deflate = q;
+      } else if (coding.equals("*")) {
+        any = q;
+      }
+    }
+    gzip = gzip < 0 ? any : gzip;
+    deflate = deflate < 0 ? any : deflate;
+    if (gzip > 0 && gzip >= deflate) {
+      return GZIP;
+    }
+    return deflate > 0 ? DEFLATE : null;
+  }
+
+  private static void sendMultipleRanges(
+      HttpExchange exchange,
+      FileChannel channel,
+      List<long[]> ranges,
+      long length,
+      String contentType,
+      boolean head)
+      throws IOException {
+    String boundary = UUID.randomUUID().toString().replace("-", "");
+    List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+    long total = 0;
+    for (long[] r : ranges) {
+      byte[] partHeader =
+          (CRLF
+                  + "--"
+                  + boundary
+                  + CRLF
+                  + "Content-Type: "
+                  + contentType
+                  + CRLF
+                  + "Content-Range: "
+                  + contentRange(r, length)
+                  + CRLF
+                  + CRLF)
+              .getBytes(StandardCharsets.ISO_8859_1);
+      partHeaders.add(partHeader);
+      total += partHeader.length + r[1] - r[0] + 1;
+    }
+    byte[] end = (CRLF + "--" + boundary + "--" + CRLF).getBytes(StandardCharsets.ISO_8859_1);
+    total += end.length;
+
+    exchange.getResponseHeaders().set("Content-Type", "multipart/byteranges; boundary=" + boundary);
+    exchange.sendResponseHeaders(206, head ? -1 : total);
+    if (head) {
+      return;
+    }
+    try (OutputStream os = exchange.getResponseBody()) {
+      for (int i = 0; i < ranges.size(); i++) {
+        long[] r = ranges.get(i);
+        os.write(partHeaders.get(i));
+        transfer(channel, r[0], r[1] - r[0] + 1, os);
+      }
+      os.write(end);
+    }
+  }
+
+  private static void transfer(FileChannel channel, long position, long count, OutputStream os)
+      throws IOException {
+    WritableByteChannel target = Channels.newChannel(os);
+    long sent = 0;
+    while (sent < count) {
+      long n = channel.transferTo(position + sent, count - sent, target);
+      if (n <= 0) {
+        throw new IOException("File truncated while sending");
+      }
+      sent += n;
+    }
+  }
+
+  private static boolean notModified(Headers headers, String etag, long lastModified) {
+    String ifNoneMatch = headers.getFirst("If-None-Match");
+    if (ifNoneMatch != null) {
+      // 有If-None-Match时忽略If-Modified-Since
+      for (String tag : ifNoneMatch.split(",")) {
+        String trimmed = tag.trim();
+        if (trimmed.startsWith("W/")) {
+          trimmed = trimmed.substring(2);
+        }
+        if (trimmed.equals("*") || trimmed.equals(etag)) {
+          return true;
+        }
+      }
+      return false;
+    }
+    long since = parseHttpDate(headers.getFirst("If-Modified-Since"));
+    return since >= 0 && lastModified <= since;
+  }
+
+  /** If-Range与当前文件一致时Range才有效，否则返回整个文件 */
+  private static boolean ifRangeMatches(String ifRange, String etag, long lastModified) {
+    if (ifRange == null) {
+      return true;
+    }
+    String trimmed = ifRange.trim();
+    if (trimmed.startsWith("\"") || trimmed.startsWith("W/")) {
+      return trimmed.equals(etag);
+    }
+    return parseHttpDate(trimmed) == lastModified;
+  }
+
+  /**
+   * 解析Range请求头
+   *
+   * @return 按请求顺序排列的[start, end]列表；空列表表示无法满足；null表示忽略Range返回整个文件
+   */
+  static List<long[]> parseRanges(String header, long length) {
+    String value = header.trim();
+    if (!value.regionMatches(true, 0, "bytes=", 0, 6)) {
+      return null;
+    }
+    String[] specs = value.substring(6).split(",");
+    if (specs.length > MAX_RANGES) {
+      return null;
+    }
+    List<long[]> ranges = new ArrayList<>(specs.length);
+    for (String spec : specs) {
+      String s = spec.trim();
+      int dash = s.indexOf('-');
+      if (dash < 0) {
+        return null;
+      }
+      long start;
+      long end;
+      try {
+        if (dash == 0) {
+          // 最后n个字节
+          long suffix = Long.parseLong(s.substring(1));
+          if (suffix <= 0) {
+            continue;
+          }
+          start = Math.max(0, length - suffix);
+          end = length - 1;
+        } else {
+          start = Long.parseLong(s.substring(0, dash));
+          end = dash == s.length() - 1 ? Long.MAX_VALUE : Long.parseLong(s.substring(dash + 1));
+        }
+      } catch (NumberFormatException e) {
+        return null;
+      }
+      if (start > end) {
+        return null;
+      }
+      if (start >= length) {
+        continue;
+      }
+      ranges.add(new long[] {start, Math.min(end, length - 1)});
+    }
+    return ranges;
+  }
+
+  private static String contentRange(long[] range, long length) {
+    return "bytes " + range[0] + "-" + range[1] + "/" + length;
+  }
+
+  private static String formatHttpDate(long millis) {
+    return DateTimeFormatter.RFC_1123_DATE_TIME.format(
+        ZonedDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC));
+  }
+
+  private static long parseHttpDate(String value) {
+    if (value == null) {
+      return -1;
+    }
+    try {
+      return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+          .toInstant()
+          .toEpochMilli();
+    } catch (DateTimeParseException e) {
+      return -1;
+    }
+  }
+}
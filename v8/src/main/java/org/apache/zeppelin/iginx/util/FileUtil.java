@@ -20,6 +20,21 @@ public class FileUtil {
     }
   }
 
+  /** 写入UTF-8编码后的内容，并在同目录下生成压缩后的.gz文件，文件服务器对支持gzip的请求直接发送.gz文件 */
+  public static void writeFileWithGzip(byte[] content, String filePath) {
+    try (FileOutputStream fos = new FileOutputStream(filePath)) {
+      fos.write(content);
+    } catch (IOException e) {
+      LOGGER.warn("write file {} error", filePath, e);
+      return;
+    }
+    try {
+      FileResponder.precompress(new File(filePath));
+    } catch (IOException e) {
+      LOGGER.warn("gzip file {} error", filePath, e);
+    }
+  }
+
   public static String readFile(String filePath) {
     StringBuilder content = new StringBuilder();
     try (InputStream inputStream =
@@ -35,11 +50,26 @@ public class FileUtil {
     return content.toString();
   }
 
+  /**
+   * 渲染classpath中的html模板，模板按路径和占位符预编译并缓存
+   *
+   * @param htmlPath 模板路径
+   * @param parameters 占位符和参数值交替排列
+   */
   public static String renderingHtml(String htmlPath, String... parameters) {
-    String html = readFile(htmlPath);
-    for (int i = 0; i < parameters.length; i = i + 2) {
-      html = html.replace(parameters[i], parameters[i + 1]);
+    StringBuilder html = new StringBuilder();
+    renderingHtml(html, htmlPath, parameters);
+    return html.toString();
+  }
+
+  /** 渲染html模板并追加到out中 */
+  public static void renderingHtml(StringBuilder out, String htmlPath, String... parameters) {
+    String[] placeholders = new String[parameters.length / 2];
+    String[] values = new String[placeholders.length];
+    for (int i = 0; i < placeholders.length; i++) {
+      placeholders[i] = parameters[2 * i];
+      values[i] = parameters[2 * i + 1];
     }
-    return html;
+    HtmlTemplate.fromResource(htmlPath, placeholders).render(out, values);
   }
 }
@@ -0,0 +1,207 @@
+package org.apache.zeppelin.iginx.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 图页面的内存LRU缓存，由解释器写入、文件服务器读取，按缓存的字节数（原文和gzip压缩后的内容）限制容量。
+ *
+ * <p>key为图页面相对于文件服务器根目录的路径，其中包含段落id；每个条目记录内容的hash，作为ETag，内容未变化时不重复写盘。
+ * 写入缓存后由后台线程写到磁盘，缓存淘汰或解释器重启后文件服务器仍可从磁盘读取。
+ */
+public class GraphCache {
+  private static final Logger LOGGER = LoggerFactory.getLogger(GraphCache.class);
+
+  private final String baseDir;
+  private final long maxBytes;
+  private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final ExecutorService writer;
+  private long totalBytes = 0;
+
+  /**
+   * @param baseDir 文件服务器根目录，图页面写到该目录下
+   * @param maxBytes 缓存的最大字节数
+   */
+  public GraphCache(String baseDir, long maxBytes) {
+    this.baseDir = baseDir;
+    this.maxBytes = maxBytes;
+    this.writer =
+        new ThreadPoolExecutor(
+            1,
+            1,
+            60L,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            new NamedThreadFactory("iginx-graph-writer"));
+  }
+
+  /**
+   * 缓存图页面并在后台写盘
+   *
+   * @param path 相对于文件服务器根目录的路径，如/graphs/tree/xxx_tree.html
+   * @param raw UTF-8编码的页面内容，调用方不应再修改
+   */
+  public void put(String path, byte[] raw) {
+    String hash = hash(raw);
+    Entry old = get(path);
+    if (old != null && old.hash.equals(hash)) {
+      return;
+    }
+    Entry entry;
+    try {
+      entry = new Entry(raw, gzip(raw), hash, System.currentTimeMillis() / 1000 * 1000);
+    } catch (IOException e) {
+      LOGGER.warn("gzip graph {} error", path, e);
+      return;
+    }
+    boolean cached = entry.bytes() <= maxBytes;
+    synchronized (this) {
+      remove(path);
+      if (cached) {
+        entries.put(path, entry);
+        totalBytes += entry.bytes();
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+          totalBytes -= iterator.next().getValue().bytes();
+          iterator.remove();
+        }
+      }
+    }
+    // 所有写盘都由同一个后台线程按提交顺序执行，同一路径的新内容不会被排队中的旧内容覆盖
+    Future<?> written = writer.submit(() -> writeToDisk(path, entry));
+    if (!cached) {
+      // 超过缓存容量的页面只能从磁盘读取，等待写盘完成后再返回
+      try {
+        written.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (ExecutionException e) {
+        LOGGER.warn("write graph {} error", path, e.getCause());
+      }
+    }
+  }
+
+  public synchronized Entry get(String path) {
+    return entries.get(path);
+  }
+
+  /** 等待已提交的写盘任务完成后关闭写线程 */
+  public void close() {
+    writer.shutdown();
+    try {
+      if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+        LOGGER.warn("graph files are not fully written");
+        writer.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      writer.shutdownNow();
+    }
+  }
+
+  private void remove(String path) {
+    Entry removed = entries.remove(path);
+    if (removed != null) {
+      totalBytes -= removed.bytes();
+    }
+  }
+
+  private void writeToDisk(String path, Entry entry) {
+    File file = new File(baseDir + path);
+    try {
+      Files.createDirectories(file.getParentFile().toPath());
+      write(file, entry.raw);
+      // .gz文件晚于html写入，文件服务器据此判断.gz文件未过期
+      write(new File(file.getPath() + FileResponder.GZIP_SUFFIX), entry.gzip);
+    } catch (IOException e) {
+      LOGGER.warn("write graph {} error", file.getPath(), e);
+    }
+  }
+
+  private static void write(File file, byte[] content) throws IOException {
+    // 临时文件名唯一，多个解释器进程写同一目录时也不会冲突
+    Path temp = new File(file.getPath() + "." + UUID.randomUUID() + ".tmp").toPath();
+    try {
+      Files.write(temp, content);
+      Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private static byte[] gzip(byte[] raw) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 8 + 64);
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(raw);
+    }
+    return out.toByteArray();
+  }
+
+  private static String hash(byte[] raw) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(raw);
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < 12; i++) {
+        sb.append(String.format("%02x", digest[i]));
+      }
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      return Integer.toHexString(Arrays.hashCode(raw)) + "-" + raw.length;
+    }
+  }
+
+  /** 缓存的图页面 */
+  public static class Entry {
+    private final byte[] raw;
+    private final byte[] gzip;
+    private final String hash;
+    private final long lastModified;
+
+    private Entry(byte[] raw, byte[] gzip, String hash, long lastModified) {
+      this.raw = raw;
+      this.gzip = gzip;
+      this.hash = hash;
+      this.lastModified = lastModified;
+    }
+
+    public byte[] getRaw() {
+      return raw;
+    }
+
+    public byte[] getGzip() {
+      return gzip;
+    }
+
+    public String getHash() {
+      return hash;
+    }
+
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    private long bytes() {
+      return raw.length + gzip.length;
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package org.apache.zeppelin.iginx.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** 按段落保存SHOW COLUMNS构建的树，树状图页面按需向文件服务器请求节点的子节点，只保留最近使用的若干个段落的树。 */
+public class GraphTreeStore {
+  private final int maxTrees;
+  private final LinkedHashMap<String, MultiwayTree> trees = new LinkedHashMap<>(16, 0.75f, true);
+
+  /** @param maxTrees 最多保存的树的数量 */
+  public GraphTreeStore(int maxTrees) {
+    this.maxTrees = Math.max(1, maxTrees);
+  }
+
+  public synchronized void put(String paragraphId, MultiwayTree tree) {
+    trees.put(paragraphId, tree);
+    Iterator<Map.Entry<String, MultiwayTree>> iterator = trees.entrySet().iterator();
+    while (trees.size() > maxTrees && iterator.hasNext()) {
+      iterator.next();
+      iterator.remove();
+    }
+  }
+
+  public synchronized MultiwayTree get(String paragraphId) {
+    return trees.get(paragraphId);
+  }
+
+  /**
+   * 取段落的树中某个节点的一页子节点
+   *
+   * @param paragraphId 段落id
+   * @param path 节点路径，即Highcharts节点id
+   * @param offset 第一个子节点的下标
+   * @param limit 最多返回的子节点数
+   * @return 段落的树或节点不存在时返回null
+   */
+  public List<HighchartsTreeNode> childrenPage(
+      String paragraphId, String path, int offset, int limit) {
+    MultiwayTree tree = get(paragraphId);
+    if (tree == null) {
+      return null;
+    }
+    // 树构建完成后不再修改，可以不加锁读取
+    TreeNode node = tree.findNodeByPath(path);
+    if (node == null) {
+      return null;
+    }
+    return MultiwayTree.childrenPage(node, path, MultiwayTree.depthOf(node), offset, limit);
+  }
+}
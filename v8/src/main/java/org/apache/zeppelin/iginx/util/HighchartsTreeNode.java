@@ -1,10 +1,15 @@
 package org.apache.zeppelin.iginx.util;
 
+import java.io.IOException;
+import java.io.Writer;
+
 public class HighchartsTreeNode {
   private String id;
   private String name;
   private String parent;
   private int depth;
+  // 按需加载子节点时的子节点数，为null时不输出
+  private Integer childCount;
 
   public HighchartsTreeNode(String id, String name, String parent, int depth) {
     this.id = id;
@@ -48,4 +53,73 @@ public class HighchartsTreeNode {
   public void setDepth(int depth) {
     this.depth = depth;
   }
+
+  public Integer getChildCount() {
+    return childCount;
+  }
+
+  public void setChildCount(Integer childCount) {
+    this.childCount = childCount;
+  }
+
+  /** 以JSON对象写出节点，格式与JSON.toJSONString一致：字段按名称排序，null字段省略 */
+  public void writeJson(Writer out) throws IOException {
+    writeJson(out, id, name, parent, depth, childCount);
+  }
+
+  /** 不创建节点对象，直接以JSON对象写出节点的各个字段 */
+  public static void writeJson(
+      Writer out, String id, String name, String parent, int depth, Integer childCount)
+      throws IOException {
+    out.write('{');
+    if (childCount != null) {
+      out.write("\"childCount\":");
+      out.write(Integer.toString(childCount));
+      out.write(',');
+    }
+    out.write("\"depth\":");
+    out.write(Integer.toString(depth));
+    out.write(",\"id\":");
+    writeString(out, id);
+    out.write(",\"name\":");
+    writeString(out, name);
+    out.write(",\"parent\":");
+    writeString(out, depth == 0 ? "undefined" : parent);
+    out.write('}');
+  }
+
+  private static void writeString(Writer out, String value) throws IOException {
+    out.write('"');
+    int start = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      // 节点JSON嵌在<script>中，<也转义，避免路径中的</script>提前结束脚本
+      if (c >= 0x20 && c != '"' && c != '\\' && c != '<') {
+        continue;
+      }
+      out.write(value, start, i - start);
+      switch (c) {
+        case '"':
+          out.write("\\\"");
+          break;
+        case '\\':
+          out.write("\\\\");
+          break;
+        case '\n':
+          out.write("\\n");
+          break;
+        case '\r':
+          out.write("\\r");
+          break;
+        case '\t':
+          out.write("\\t");
+          break;
+        default:
+          out.write(String.format("\\u%04x", (int) c));
+      }
+      start = i + 1;
+    }
+    out.write(value, start, value.length() - start);
+    out.write('"');
+  }
 }
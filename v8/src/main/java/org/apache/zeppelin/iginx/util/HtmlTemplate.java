@@ -0,0 +1,123 @@
+package org.apache.zeppelin.iginx.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 预编译的html模板：编译时扫描一遍模板，按占位符的位置切分为字面量和占位符交替的片段，渲染时依次写出，不再扫描模板，也不生成中间字符串。
+ *
+ * <p>classpath中的模板按路径和占位符缓存，只读取和编译一次。参数值为{@link Fragment}时在占位符处直接写出，用于节点列表等较大的内容；替换后的内容不会再被当作模板扫描。
+ */
+public class HtmlTemplate {
+  private static final ConcurrentHashMap<String, HtmlTemplate> RESOURCE_TEMPLATES =
+      new ConcurrentHashMap<>();
+
+  /** 在占位符处直接写出的内容 */
+  public interface Fragment {
+    void writeTo(Writer out) throws IOException;
+  }
+
+  // literals比slots多一个，渲染顺序为literals[0], slots[0], literals[1], ...
+  private final String[] literals;
+  // 每个位置上的占位符在参数中的下标
+  private final int[] slots;
+  private final int literalLength;
+
+  private HtmlTemplate(String[] literals, int[] slots) {
+    this.literals = literals;
+    this.slots = slots;
+    int length = 0;
+    for (String literal : literals) {
+      length += literal.length();
+    }
+    this.literalLength = length;
+  }
+
+  /**
+   * 编译模板
+   *
+   * @param text 模板内容
+   * @param placeholders 占位符，多个占位符可在同一位置匹配时取靠前的
+   */
+  public static HtmlTemplate compile(String text, String... placeholders) {
+    List<String> literals = new ArrayList<>();
+    List<Integer> slots = new ArrayList<>();
+    int start = 0;
+    int i = 0;
+    while (i < text.length()) {
+      int matched = -1;
+      for (int p = 0; p < placeholders.length; p++) {
+        if (!placeholders[p].isEmpty() && text.startsWith(placeholders[p], i)) {
+          matched = p;
+          break;
+        }
+      }
+      if (matched < 0) {
+        i++;
+        continue;
+      }
+      literals.add(text.substring(start, i));
+      slots.add(matched);
+      i += placeholders[matched].length();
+      start = i;
+    }
+    literals.add(text.substring(start));
+    return new HtmlTemplate(
+        literals.toArray(new String[0]), slots.stream().mapToInt(Integer::intValue).toArray());
+  }
+
+  /**
+   * 读取并编译classpath中的模板，同一模板只编译一次
+   *
+   * @param path classpath中的路径，如static/highcharts/tree.html
+   * @param placeholders 占位符
+   */
+  public static HtmlTemplate fromResource(String path, String... placeholders) {
+    String key = path + '\0' + String.join("\0", placeholders);
+    return RESOURCE_TEMPLATES.computeIfAbsent(
+        key, k -> compile(FileUtil.readFile(path), placeholders));
+  }
+
+  /**
+   * 渲染到Writer
+   *
+   * @param values 与编译时的占位符按下标对应，为String或Fragment
+   */
+  public void render(Writer out, Object... values) throws IOException {
+    for (int i = 0; i < slots.length; i++) {
+      out.write(literals[i]);
+      Object value = values[slots[i]];
+      if (value instanceof Fragment) {
+        ((Fragment) value).writeTo(out);
+      } else {
+        out.write(String.valueOf(value));
+      }
+    }
+    out.write(literals[slots.length]);
+  }
+
+  /**
+   * 追加到out中，按渲染结果的长度预先扩容
+   *
+   * @param values 与编译时的占位符按下标对应
+   */
+  public void render(StringBuilder out, String... values) {
+    int length = literalLength;
+    for (int slot : slots) {
+      length += values[slot].length();
+    }
+    out.ensureCapacity(out.length() + length);
+    for (int i = 0; i < slots.length; i++) {
+      out.append(literals[i]).append(values[slots[i]]);
+    }
+    out.append(literals[slots.length]);
+  }
+
+  /** 字面量部分的长度，用于估计渲染结果的大小 */
+  public int getLiteralLength() {
+    return literalLength;
+  }
+}
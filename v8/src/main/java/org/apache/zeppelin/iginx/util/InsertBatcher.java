@@ -0,0 +1,123 @@
+package org.apache.zeppelin.iginx.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 将连续的、VALUES之前部分完全相同的INSERT语句合并为一条多值INSERT，减少逐条执行时的网络往返。
+ *
+ * <p>每批最多合并batchSize条语句，合并后的sql长度也不超过MAX_BATCH_CHARS，避免超过Thrift的帧大小限制。
+ */
+public class InsertBatcher {
+  private static final int MAX_BATCH_CHARS = 8 * 1024 * 1024;
+
+  private InsertBatcher() {}
+
+  /**
+   * 从start开始查找可以合并的连续INSERT语句
+   *
+   * @param statements 段落中的所有语句
+   * @param start 起始下标
+   * @return 可合并语句的结束下标（不包含），start处的语句不可合并时返回start + 1
+   */
+  public static int findRunEnd(List<SqlStatement> statements, int start) {
+    SqlStatement first = statements.get(start);
+    if (!first.isCoalescableInsert()) {
+      return start + 1;
+    }
+    String prefix = first.getInsertPrefix();
+    int end = start + 1;
+    while (end < statements.size()
+        && statements.get(end).isCoalescableInsert()
+        && statements.get(end).getInsertPrefix().equals(prefix)) {
+      end++;
+    }
+    return end;
+  }
+
+  /**
+   * 将前缀相同的INSERT语句按批合并
+   *
+   * @param run findRunEnd找到的连续INSERT语句
+   * @param firstIndex run中第一条语句在段落中的下标，用于报告每批对应的语句范围
+   * @param batchSize 每批最多合并的语句数
+   * @return 合并后的批次
+   */
+  public static List<Batch> merge(List<SqlStatement> run, int firstIndex, int batchSize) {
+    if (run.isEmpty()) {
+      return Collections.emptyList();
+    }
+    int size = Math.max(1, batchSize);
+    String prefix = run.get(0).getInsertPrefix();
+    List<Batch> batches = new ArrayList<>();
+    StringBuilder builder = new StringBuilder();
+    int batchStart = 0;
+    for (int i = 0; i < run.size(); i++) {
+      String values = run.get(i).getInsertValues();
+      boolean full =
+          i - batchStart >= size
+              || (i > batchStart && builder.length() + values.length() + 2 > MAX_BATCH_CHARS);
+      if (full) {
+        batches.add(newBatch(builder, prefix, firstIndex + batchStart, firstIndex + i));
+        batchStart = i;
+      }
+      if (i == batchStart) {
+        builder.append(prefix).append(" values ");
+      } else {
+        builder.append(", ");
+      }
+      builder.append(values);
+    }
+    batches.add(newBatch(builder, prefix, firstIndex + batchStart, firstIndex + run.size()));
+    return batches;
+  }
+
+  private static Batch newBatch(StringBuilder builder, String prefix, int from, int to) {
+    builder.append(';');
+    String sql = builder.toString();
+    builder.setLength(0);
+    return new Batch(
+        new SqlStatement(
+            sql,
+            Collections.emptyList(),
+            SqlStatement.Type.INSERT,
+            null,
+            -1,
+            false,
+            prefix.length() + 1),
+        from,
+        to);
+  }
+
+  /** 合并后的一批INSERT，记录其对应的原始语句范围 */
+  public static class Batch {
+    private final SqlStatement statement;
+    private final int from;
+    private final int to;
+
+    private Batch(SqlStatement statement, int from, int to) {
+      this.statement = statement;
+      this.from = from;
+      this.to = to;
+    }
+
+    public SqlStatement getStatement() {
+      return statement;
+    }
+
+    /** 第一条语句在段落中的下标 */
+    public int getFrom() {
+      return from;
+    }
+
+    /** 最后一条语句在段落中的下标（不包含） */
+    public int getTo() {
+      return to;
+    }
+
+    public int getStatementCount() {
+      return to - from;
+    }
+  }
+}
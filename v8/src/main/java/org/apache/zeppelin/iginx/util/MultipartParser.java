@@ -0,0 +1,375 @@
+package org.apache.zeppelin.iginx.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 流式解析multipart/form-data请求体：在字节流中查找分隔符，文件部分按字节原样写入FileChannel，不做字符解码，也不按行读取。
+ *
+ * <p>读取使用可复用的直接缓冲区，内存占用与请求体大小无关。文件部分超过上限时立即停止读取并删除已写入的内容。
+ */
+public class MultipartParser {
+  private static final int BUFFER_SIZE = 256 * 1024;
+  private static final int MAX_POOLED_BUFFERS = 4;
+  private static final int MAX_HEADER_SIZE = 16 * 1024;
+  private static final int MAX_FIELD_SIZE = 64 * 1024;
+  private static final byte[] CRLF = {'\r', '\n'};
+  private static final byte[] HEADER_END = {'\r', '\n', '\r', '\n'};
+  private static final String PART_SUFFIX = ".part";
+
+  private static final BlockingQueue<ByteBuffer> BUFFER_POOL =
+      new ArrayBlockingQueue<>(MAX_POOLED_BUFFERS);
+
+  private final ReadableByteChannel source;
+  // 分隔符为CRLF--boundary，请求体开头的分隔符没有CRLF，解析前先在缓冲区中补上
+  private final byte[] delimiter;
+  private final long maxFileBytes;
+  private ByteBuffer buffer;
+  private boolean eof = false;
+
+  /**
+   * @param in 请求体
+   * @param boundary Content-Type中的boundary
+   * @param maxFileBytes 单个文件的最大字节数，小于等于0表示不限制
+   */
+  public MultipartParser(InputStream in, String boundary, long maxFileBytes) {
+    this.source = Channels.newChannel(in);
+    this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+    this.maxFileBytes = maxFileBytes;
+  }
+
+  /**
+   * 从Content-Type请求头中解析boundary
+   *
+   * @return boundary，不是multipart/form-data请求时返回null
+   */
+  public static String parseBoundary(String contentType) {
+    if (contentType == null || !contentType.toLowerCase().startsWith("multipart/form-data")) {
+      return null;
+    }
+    for (String param : contentType.split(";")) {
+      String trimmed = param.trim();
+      if (trimmed.toLowerCase().startsWith("boundary=")) {
+        String boundary = trimmed.substring("boundary=".length());
+        if (boundary.length() > 1 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+          boundary = boundary.substring(1, boundary.length() - 1);
+        }
+        return boundary.isEmpty() ? null : boundary;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * 去掉客户端文件名中的路径，避免写到上传目录之外
+   *
+   * @return 文件名，不合法时返回null
+   */
+  public static String sanitizeFileName(String fileName) {
+    if (fileName == null) {
+      return null;
+    }
+    String name =
+        fileName.substring(Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf('\\')) + 1);
+    name = name.trim();
+    if (name.isEmpty() || name.equals(".") || name.equals("..") || name.indexOf('\0') >= 0) {
+      return null;
+    }
+    return name;
+  }
+
+  /**
+   * 解析请求体，表单字段保存在结果中，文件部分写入uploadDir。文件先写入临时文件，完整接收后再重命名
+   *
+   * @param uploadDir 上传目录
+   * @return 解析结果
+   * @throws UploadTooLargeException 文件超过上限
+   * @throws IOException 请求体格式错误或读写失败
+   */
+  public Result parse(File uploadDir) throws IOException {
+    Result result = new Result();
+    buffer = acquireBuffer();
+    try {
+      buffer.put(CRLF);
+      buffer.flip();
+      // 跳过第一个分隔符之前的内容
+      skipToDelimiter();
+      while (!readDelimiterSuffixIsEnd()) {
+        Map<String, String> disposition = parseContentDisposition(readHeaders());
+        String name = disposition.get("name");
+        if (disposition.containsKey("filename")) {
+          String fileName = sanitizeFileName(disposition.get("filename"));
+          if (fileName == null) {
+            throw new IOException("Invalid upload file name: " + disposition.get("filename"));
+          }
+          File target = new File(uploadDir, fileName);
+          result.fileSize = copyFilePart(target);
+          result.fileName = fileName;
+          result.file = target;
+        } else if (name != null) {
+          result.fields.put(name, readFieldPart());
+        } else {
+          skipToDelimiter();
+        }
+      }
+      return result;
+    } finally {
+      releaseBuffer(buffer);
+      buffer = null;
+    }
+  }
+
+  private long copyFilePart(File target) throws IOException {
+    File partFile = new File(target.getPath() + PART_SUFFIX);
+    long written = 0;
+    boolean completed = false;
+    try (FileChannel channel =
+        FileChannel.open(
+            partFile.toPath(),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (true) {
+        int end = findDelimiter();
+        int dataEnd = end >= 0 ? end : safeEnd();
+        written += dataEnd - buffer.position();
+        if (maxFileBytes > 0 && written > maxFileBytes) {
+          throw new UploadTooLargeException(maxFileBytes);
+        }
+        ByteBuffer data = buffer.duplicate();
+        data.limit(dataEnd);
+        while (data.hasRemaining()) {
+          channel.write(data);
+        }
+        if (end >= 0) {
+          buffer.position(end + delimiter.length);
+          break;
+        }
+        buffer.position(dataEnd);
+        readMore();
+      }
+      completed = true;
+    } finally {
+      if (!completed) {
+        Files.deleteIfExists(partFile.toPath());
+      }
+    }
+    Files.move(partFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    return written;
+  }
+
+  private String readFieldPart() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    while (true) {
+      int end = findDelimiter();
+      int dataEnd = end >= 0 ? end : safeEnd();
+      if (out.size() + dataEnd - buffer.position() > MAX_FIELD_SIZE) {
+        throw new IOException("Form field exceeds " + MAX_FIELD_SIZE + " bytes");
+      }
+      while (buffer.position() < dataEnd) {
+        out.write(buffer.get());
+      }
+      if (end >= 0) {
+        buffer.position(end + delimiter.length);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8).trim();
+      }
+      readMore();
+    }
+  }
+
+  private void skipToDelimiter() throws IOException {
+    while (true) {
+      int end = findDelimiter();
+      if (end >= 0) {
+        buffer.position(end + delimiter.length);
+        return;
+      }
+      buffer.position(safeEnd());
+      readMore();
+    }
+  }
+
+  /** 分隔符之后为--表示请求体结束，为CRLF表示后面是下一部分的头 */
+  private boolean readDelimiterSuffixIsEnd() throws IOException {
+    ensureRemaining(2);
+    byte first = buffer.get();
+    byte second = buffer.get();
+    if (first == '-' && second == '-') {
+      return true;
+    }
+    if (first == '\r' && second == '\n') {
+      return false;
+    }
+    throw new IOException("Malformed multipart body");
+  }
+
+  private String readHeaders() throws IOException {
+    while (true) {
+      int end = indexOf(HEADER_END, buffer.position());
+      if (end >= 0) {
+        byte[] headers = new byte[end - buffer.position()];
+        buffer.get(headers);
+        buffer.position(end + HEADER_END.length);
+        return new String(headers, StandardCharsets.UTF_8);
+      }
+      if (eof) {
+        throw new IOException("Unexpected end of multipart body");
+      }
+      if (buffer.remaining() >= MAX_HEADER_SIZE) {
+        throw new IOException("Multipart headers exceed " + MAX_HEADER_SIZE + " bytes");
+      }
+      readMore();
+    }
+  }
+
+  private static Map<String, String> parseContentDisposition(String headers) {
+    Map<String, String> params = new HashMap<>();
+    for (String header : headers.split("\r\n")) {
+      int colon = header.indexOf(':');
+      if (colon < 0 || !header.substring(0, colon).trim().equalsIgnoreCase("Content-Disposition")) {
+        continue;
+      }
+      for (String param : header.substring(colon + 1).split(";")) {
+        int eq = param.indexOf('=');
+        if (eq < 0) {
+          continue;
+        }
+        String value = param.substring(eq + 1).trim();
+        if (value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+          value = value.substring(1, value.length() - 1);
+        }
+        params.put(param.substring(0, eq).trim().toLowerCase(), value);
+      }
+    }
+    return params;
+  }
+
+  /** 在未处理的数据中查找分隔符，找不到时返回-1 */
+  private int findDelimiter() throws IOException {
+    if (buffer.remaining() < delimiter.length && !eof) {
+      readMore();
+    }
+    int found = indexOf(delimiter, buffer.position());
+    if (found < 0 && eof && buffer.remaining() < delimiter.length) {
+      throw new IOException("Unexpected end of multipart body");
+    }
+    return found;
+  }
+
+  /** 未找到分隔符时可以安全处理的数据末尾，保留可能是分隔符前缀的部分 */
+  private int safeEnd() {
+    return Math.max(buffer.position(), buffer.limit() - delimiter.length + 1);
+  }
+
+  private int indexOf(byte[] pattern, int from) {
+    int last = buffer.limit() - pattern.length;
+    byte first = pattern[0];
+    for (int i = from; i <= last; i++) {
+      if (buffer.get(i) != first) {
+        continue;
+      }
+      int j = 1;
+      while (j < pattern.length && buffer.get(i + j) == pattern[j]) {
+        j++;
+      }
+      if (j == pattern.length) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void ensureRemaining(int length) throws IOException {
+    while (buffer.remaining() < length) {
+      if (eof) {
+        throw new IOException("Unexpected end of multipart body");
+      }
+      readMore();
+    }
+  }
+
+  /** 将未处理的数据移到缓冲区开头，并从请求体读取更多数据 */
+  private void readMore() throws IOException {
+    if (eof) {
+      return;
+    }
+    buffer.compact();
+    try {
+      int read = 0;
+      while (read == 0 && buffer.hasRemaining()) {
+        read = source.read(buffer);
+      }
+      if (read < 0) {
+        eof = true;
+      }
+    } finally {
+      buffer.flip();
+    }
+  }
+
+  private static ByteBuffer acquireBuffer() {
+    ByteBuffer pooled = BUFFER_POOL.poll();
+    if (pooled == null) {
+      return ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+    pooled.clear();
+    return pooled;
+  }
+
+  private static void releaseBuffer(ByteBuffer buffer) {
+    if (buffer != null) {
+      BUFFER_POOL.offer(buffer);
+    }
+  }
+
+  /** 解析结果：表单字段以及上传的文件 */
+  public static class Result {
+    private final Map<String, String> fields = new HashMap<>();
+    private String fileName = null;
+    private File file = null;
+    private long fileSize = 0;
+
+    public String getField(String name) {
+      return fields.getOrDefault(name, "");
+    }
+
+    public Map<String, String> getFields() {
+      return fields;
+    }
+
+    public String getFileName() {
+      return fileName;
+    }
+
+    public File getFile() {
+      return file;
+    }
+
+    public long getFileSize() {
+      return fileSize;
+    }
+  }
+
+  /** 上传文件超过iginx.zeppelin.upload.file.max.size */
+  public static class UploadTooLargeException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public UploadTooLargeException(long maxFileBytes) {
+      super("Upload file exceeds the limit of " + maxFileBytes + " bytes");
+    }
+  }
+}
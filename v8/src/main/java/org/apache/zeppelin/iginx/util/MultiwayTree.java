@@ -1,13 +1,17 @@
 package org.apache.zeppelin.iginx.util;
 
-import java.util.LinkedList;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Queue;
-import org.apache.commons.lang3.StringUtils;
 
+/** 由点号分隔的路径构建的前缀树。子节点较多时按名称建立hash索引，不同分支中的同名路径段尽量共用同一个字符串，节点只保存自身名称，路径在遍历时由父节点路径拼接得到。 */
 public class MultiwayTree {
   public static final String ROOT_NODE_NAME = "";
   public static final String ROOT_NODE_PATH = "rootId";
+  public static final String MORE_NODE_MARK = "#more@";
+  private static final int SEGMENT_CACHE_SIZE = 1 << 14;
 
   public TreeNode getRoot() {
     return root;
@@ -18,59 +22,78 @@ public class MultiwayTree {
   }
 
   TreeNode root;
+  // 路径段字符串池，按hash直接映射的定长数组，冲突时覆盖，不随列数增长
+  private final String[] segments = new String[SEGMENT_CACHE_SIZE];
+  // 不含根节点的节点数
+  private int nodeCount = 0;
+  // 根节点深度为0时的最大深度
+  private int maxDepth = 0;
 
-  public TreeNode insert(TreeNode parenNode, TreeNode newNode) {
-    TreeNode childNode = findNode(parenNode, newNode);
-    if (childNode != null) {
-      System.out.println("node already exists");
-    } else {
-      parenNode.children.add(newNode);
-      return newNode;
-    }
-    return childNode;
+  public int getNodeCount() {
+    return nodeCount;
   }
 
-  // 查找节点操作
-  private TreeNode findNode(TreeNode node, TreeNode nodeToFind) {
-    if (node == null) {
-      return null;
-    }
-    for (TreeNode child : node.children) {
-      if (child.value.equals(nodeToFind.value)) {
-        return child;
-      }
+  /** 与writeHighchartsTreeNodes的返回值一致，即层数 */
+  public int getDepth() {
+    return maxDepth + 1;
+  }
+
+  /**
+   * 在parenNode下插入newNode，同名子节点已存在时返回已有节点
+   *
+   * @return 插入的节点或已有的同名节点
+   */
+  public TreeNode insert(TreeNode parenNode, TreeNode newNode) {
+    TreeNode childNode = parenNode.getChild(newNode.value);
+    if (childNode != null) {
+      return childNode;
     }
-    return null;
+    newNode.parent = parenNode;
+    parenNode.addChild(newNode);
+    nodeCount++;
+    return newNode;
   }
 
   /**
-   * 广度优先遍历树，转换为Highcharts节点数组
+   * 广度优先遍历树，以Highcharts节点的JSON数组写出，不创建节点对象
    *
-   * @param root
-   * @param nodeList
+   * @param root 根节点
+   * @param out 输出
+   * @return 层数
    */
-  public int traverseToHighchartsTreeNodes(TreeNode root, List<HighchartsTreeNode> nodeList) {
+  public int writeHighchartsTreeNodes(TreeNode root, Writer out) throws IOException {
+    out.write('[');
     if (root == null) {
+      out.write(']');
       return 0;
     }
 
-    Queue<TreeNode> queue = new LinkedList<>();
+    ArrayDeque<Object> queue = new ArrayDeque<>();
     queue.offer(root);
+    queue.offer(root.getPath());
     int depth = 0;
+    boolean first = true;
 
     while (!queue.isEmpty()) {
-      int levelSize = queue.size(); // 当前层的节点数
+      int levelSize = queue.size() / 2; // 当前层的节点数
       for (int i = 0; i < levelSize; i++) {
-        TreeNode node = queue.poll();
-        nodeList.add(
-            new HighchartsTreeNode(
-                node.path, node.value, StringUtils.substringBeforeLast(node.path, "."), depth));
+        TreeNode node = (TreeNode) queue.poll();
+        String path = (String) queue.poll();
+        int dot = path.lastIndexOf('.');
+        if (!first) {
+          out.write(',');
+        }
+        first = false;
+        HighchartsTreeNode.writeJson(
+            out, path, node.value, dot < 0 ? path : path.substring(0, dot), depth, null);
         for (TreeNode child : node.children) {
           queue.offer(child);
+          queue.offer(child.path != null ? child.path : path + "." + child.value);
         }
       }
       depth++;
     }
+    out.write(']');
     return depth;
   }
 
@@ -81,12 +104,114 @@ public class MultiwayTree {
   }
 
   public static void addTreeNodeFromString(MultiwayTree tree, String nodeString) {
-    String[] nodes = nodeString.split("\\.");
-    TreeNode newNode = tree.root;
-    for (int i = 0; i < nodes.length; i++) {
-      newNode =
-          tree.insert(
-              newNode, new TreeNode(StringUtils.join(newNode.path, ".", nodes[i]), nodes[i]));
+    TreeNode node = tree.root;
+    int start = 0;
+    int length = nodeString.length();
+    // 与String.split一致，忽略末尾的空路径段
+    while (length > 0 && nodeString.charAt(length - 1) == '.') {
+      length--;
+    }
+    if (length == 0 && !nodeString.isEmpty()) {
+      return;
+    }
+    int depth = 0;
+    while (start <= length) {
+      int end = nodeString.indexOf('.', start);
+      if (end < 0) {
+        end = length;
+      }
+      String segment = nodeString.substring(start, end);
+      TreeNode child = node.getChild(segment);
+      if (child == null) {
+        child = new TreeNode(node, tree.intern(segment));
+        node.addChild(child);
+        tree.nodeCount++;
+      }
+      node = child;
+      start = end + 1;
+      depth++;
+    }
+    tree.maxDepth = Math.max(tree.maxDepth, depth);
+  }
+
+  /**
+   * 按Highcharts节点id（即节点路径）查找节点
+   *
+   * @return 不存在时返回null
+   */
+  public TreeNode findNodeByPath(String path) {
+    String rootPath = root.getPath();
+    if (path.equals(rootPath)) {
+      return root;
+    }
+    if (!path.startsWith(rootPath + ".")) {
+      return null;
+    }
+    TreeNode node = root;
+    int start = rootPath.length() + 1;
+    while (node != null && start <= path.length()) {
+      int end = path.indexOf('.', start);
+      if (end < 0) {
+        end = path.length();
+      }
+      node = node.getChild(path.substring(start, end));
+      start = end + 1;
+    }
+    return node;
+  }
+
+  /**
+   * 取node的一页子节点，转换为带子节点数的Highcharts节点，后面还有子节点时追加一个id以{@link #MORE_NODE_MARK}加下一页偏移量结尾的节点
+   *
+   * @param node 父节点
+   * @param path 父节点路径
+   * @param depth 父节点深度
+   * @param offset 第一个子节点的下标
+   * @param limit 最多返回的子节点数
+   */
+  public static List<HighchartsTreeNode> childrenPage(
+      TreeNode node, String path, int depth, int offset, int limit) {
+    List<TreeNode> children = node.children;
+    int end = (int) Math.min(children.size(), (long) offset + limit);
+    List<HighchartsTreeNode> page = new ArrayList<>(Math.max(0, end - offset) + 1);
+    for (int i = Math.max(0, offset); i < end; i++) {
+      TreeNode child = children.get(i);
+      HighchartsTreeNode treeNode =
+          new HighchartsTreeNode(
+              child.path != null ? child.path : path + "." + child.value,
+              child.value,
+              path,
+              depth + 1);
+      treeNode.setChildCount(child.children.size());
+      page.add(treeNode);
+    }
+    if (end < children.size()) {
+      page.add(
+          new HighchartsTreeNode(
+              path + MORE_NODE_MARK + end,
+              "更多(" + (children.size() - end) + ")...",
+              path,
+              depth + 1));
+    }
+    return page;
+  }
+
+  /** 节点深度，根节点为0 */
+  public static int depthOf(TreeNode node) {
+    int depth = 0;
+    for (TreeNode parent = node.parent; parent != null; parent = parent.parent) {
+      depth++;
+    }
+    return depth;
+  }
+
+  private String intern(String segment) {
+    int slot = segment.hashCode() & (SEGMENT_CACHE_SIZE - 1);
+    String existing = segments[slot];
+    if (segment.equals(existing)) {
+      return existing;
     }
+    segments[slot] = segment;
+    return segment;
   }
 }
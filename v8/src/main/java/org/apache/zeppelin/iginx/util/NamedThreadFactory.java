@@ -0,0 +1,21 @@
+package org.apache.zeppelin.iginx.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** 以固定前缀命名线程的ThreadFactory，创建的线程均为守护线程，便于在线程栈中区分解释器内部的线程池 */
+public class NamedThreadFactory implements ThreadFactory {
+  private final String prefix;
+  private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+  public NamedThreadFactory(String prefix) {
+    this.prefix = prefix;
+  }
+
+  @Override
+  public Thread newThread(Runnable r) {
+    Thread thread = new Thread(r, prefix + "-" + threadNumber.getAndIncrement());
+    thread.setDaemon(true);
+    return thread;
+  }
+}
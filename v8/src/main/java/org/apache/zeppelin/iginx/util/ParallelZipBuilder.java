@@ -0,0 +1,325 @@
+package org.apache.zeppelin.iginx.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * 多线程生成zip文件：各条目在线程池中并行压缩到临时文件，再按给定顺序依次写入标准zip，条目顺序与线程调度无关。
+ *
+ * <p>已经压缩过的文件以及压缩后反而变大的文件以STORED方式写入。条目大小或偏移超过4GB时使用ZIP64扩展。
+ */
+public class ParallelZipBuilder {
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+  private static final int ZIP64_COUNT_LIMIT = 0xFFFF;
+  private static final int FLAG_UTF8 = 0x0800;
+  private static final int VERSION_DEFAULT = 20;
+  private static final int VERSION_ZIP64 = 45;
+
+  private final ExecutorService workerPool;
+  private final int level;
+
+  /**
+   * @param workerPool 压缩条目的线程池
+   * @param level 压缩级别，0-9，-1为默认级别
+   */
+  public ParallelZipBuilder(ExecutorService workerPool, int level) {
+    this.workerPool = workerPool;
+    this.level = level;
+  }
+
+  /**
+   * 将文件列表写成zip，out不会被关闭
+   *
+   * @param files 文件列表，条目名为文件名，条目顺序与列表顺序一致
+   * @param out 输出流
+   * @param tempDir 存放压缩中间结果的目录，写完后删除
+   */
+  public void write(List<File> files, OutputStream out, File tempDir) throws IOException {
+    Files.createDirectories(tempDir.toPath());
+    List<Future<Entry>> futures = new ArrayList<>(files.size());
+    try {
+      for (int i = 0; i < files.size(); i++) {
+        File file = files.get(i);
+        File temp = new File(tempDir, i + ".deflate");
+        futures.add(workerPool.submit(() -> compress(file, temp)));
+      }
+      CountingOutputStream counting =
+          new CountingOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+      List<Entry> entries = new ArrayList<>(files.size());
+      byte[] buffer = new byte[BUFFER_SIZE];
+      for (Future<Entry> future : futures) {
+        // 按顺序等待，前面的条目写入时后面的条目仍在压缩
+        Entry entry = await(future);
+        entry.offset = counting.count;
+        writeLocalHeader(counting, entry);
+        copy(entry.stored ? entry.source : entry.compressed, counting, buffer);
+        if (entry.compressed != null) {
+          Files.deleteIfExists(entry.compressed.toPath());
+        }
+        entries.add(entry);
+      }
+      writeCentralDirectory(counting, entries);
+      counting.flush();
+    } finally {
+      for (Future<Entry> future : futures) {
+        future.cancel(true);
+      }
+      FileUtils.deleteQuietly(tempDir);
+    }
+  }
+
+  private Entry compress(File file, File temp) throws IOException {
+    Entry entry = new Entry(file);
+    CRC32 crc = new CRC32();
+    byte[] buffer = new byte[BUFFER_SIZE];
+    if (ZipStreamer.isCompressed(file.getName()) || level == 0) {
+      try (InputStream in = new FileInputStream(file)) {
+        int len;
+        while ((len = in.read(buffer)) != -1) {
+          crc.update(buffer, 0, len);
+          entry.size += len;
+        }
+      }
+      entry.crc = crc.getValue();
+      entry.compressedSize = entry.size;
+      entry.stored = true;
+      return entry;
+    }
+
+    Deflater deflater = new Deflater(level, true);
+    try (InputStream in = new FileInputStream(file);
+        DeflaterOutputStream dos =
+            new DeflaterOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE),
+                deflater,
+                BUFFER_SIZE)) {
+      int len;
+      while ((len = in.read(buffer)) != -1) {
+        if (Thread.currentThread().isInterrupted()) {
+          throw new InterruptedIOException("zip cancelled");
+        }
+        crc.update(buffer, 0, len);
+        entry.size += len;
+        dos.write(buffer, 0, len);
+      }
+    } finally {
+      deflater.end();
+    }
+    entry.crc = crc.getValue();
+    entry.compressedSize = temp.length();
+    if (entry.compressedSize >= entry.size) {
+      // 压缩没有收益，改为STORED
+      Files.deleteIfExists(temp.toPath());
+      entry.compressedSize = entry.size;
+      entry.stored = true;
+    } else {
+      entry.compressed = temp;
+    }
+    return entry;
+  }
+
+  private static Entry await(Future<Entry> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("zip cancelled");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException("zip error: " + cause.getMessage(), cause);
+    }
+  }
+
+  private static void copy(File file, OutputStream out, byte[] buffer) throws IOException {
+    try (InputStream in = new FileInputStream(file)) {
+      int len;
+      while ((len = in.read(buffer)) != -1) {
+        out.write(buffer, 0, len);
+      }
+    }
+  }
+
+  private static void writeLocalHeader(OutputStream out, Entry entry) throws IOException {
+    boolean zip64 = entry.size >= ZIP64_LIMIT || entry.compressedSize >= ZIP64_LIMIT;
+    writeInt(out, 0x04034b50);
+    writeShort(out, zip64 ? VERSION_ZIP64 : VERSION_DEFAULT);
+    writeShort(out, FLAG_UTF8);
+    writeShort(out, entry.stored ? 0 : 8);
+    writeInt(out, entry.dosTime);
+    writeInt(out, entry.crc);
+    writeInt(out, zip64 ? ZIP64_LIMIT : entry.compressedSize);
+    writeInt(out, zip64 ? ZIP64_LIMIT : entry.size);
+    writeShort(out, entry.name.length);
+    writeShort(out, zip64 ? 20 : 0);
+    out.write(entry.name);
+    if (zip64) {
+      writeShort(out, 0x0001);
+      writeShort(out, 16);
+      writeLong(out, entry.size);
+      writeLong(out, entry.compressedSize);
+    }
+  }
+
+  private static void writeCentralDirectory(CountingOutputStream out, List<Entry> entries)
+      throws IOException {
+    long start = out.count;
+    for (Entry entry : entries) {
+      boolean sizeZip64 = entry.size >= ZIP64_LIMIT || entry.compressedSize >= ZIP64_LIMIT;
+      boolean offsetZip64 = entry.offset >= ZIP64_LIMIT;
+      int extraSize = (sizeZip64 ? 16 : 0) + (offsetZip64 ? 8 : 0);
+      writeInt(out, 0x02014b50);
+      writeShort(out, VERSION_ZIP64);
+      writeShort(out, extraSize > 0 ? VERSION_ZIP64 : VERSION_DEFAULT);
+      writeShort(out, FLAG_UTF8);
+      writeShort(out, entry.stored ? 0 : 8);
+      writeInt(out, entry.dosTime);
+      writeInt(out, entry.crc);
+      writeInt(out, sizeZip64 ? ZIP64_LIMIT : entry.compressedSize);
+      writeInt(out, sizeZip64 ? ZIP64_LIMIT : entry.size);
+      writeShort(out, entry.name.length);
+      writeShort(out, extraSize > 0 ? extraSize + 4 : 0);
+      writeShort(out, 0); // comment length
+      writeShort(out, 0); // disk number start
+      writeShort(out, 0); // internal attributes
+      writeInt(out, 0); // external attributes
+      writeInt(out, offsetZip64 ? ZIP64_LIMIT : entry.offset);
+      out.write(entry.name);
+      if (extraSize > 0) {
+        writeShort(out, 0x0001);
+        writeShort(out, extraSize);
+        if (sizeZip64) {
+          writeLong(out, entry.size);
+          writeLong(out, entry.compressedSize);
+        }
+        if (offsetZip64) {
+          writeLong(out, entry.offset);
+        }
+      }
+    }
+    long end = out.count;
+    long size = end - start;
+    boolean zip64 =
+        entries.size() >= ZIP64_COUNT_LIMIT || start >= ZIP64_LIMIT || size >= ZIP64_LIMIT;
+    if (zip64) {
+      // ZIP64 end of central directory record和locator
+      writeInt(out, 0x06064b50);
+      writeLong(out, 44);
+      writeShort(out, VERSION_ZIP64);
+      writeShort(out, VERSION_ZIP64);
+      writeInt(out, 0);
+      writeInt(out, 0);
+      writeLong(out, entries.size());
+      writeLong(out, entries.size());
+      writeLong(out, size);
+      writeLong(out, start);
+      writeInt(out, 0x07064b50);
+      writeInt(out, 0);
+      writeLong(out, end);
+      writeInt(out, 1);
+    }
+    int count = Math.min(entries.size(), ZIP64_COUNT_LIMIT);
+    writeInt(out, 0x06054b50);
+    writeShort(out, 0);
+    writeShort(out, 0);
+    writeShort(out, count);
+    writeShort(out, count);
+    writeInt(out, Math.min(size, ZIP64_LIMIT));
+    writeInt(out, Math.min(start, ZIP64_LIMIT));
+    writeShort(out, 0);
+  }
+
+  private static void writeShort(OutputStream out, int value) throws IOException {
+    out.write(value & 0xFF);
+    out.write((value >>> 8) & 0xFF);
+  }
+
+  private static void writeInt(OutputStream out, long value) throws IOException {
+    writeShort(out, (int) (value & 0xFFFF));
+    writeShort(out, (int) ((value >>> 16) & 0xFFFF));
+  }
+
+  private static void writeLong(OutputStream out, long value) throws IOException {
+    writeInt(out, value & 0xFFFFFFFFL);
+    writeInt(out, value >>> 32);
+  }
+
+  /** 按DOS格式编码的修改时间，高16位为日期，低16位为时间 */
+  private static long toDosTime(long millis) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.setTimeInMillis(millis);
+    int year = calendar.get(Calendar.YEAR);
+    if (year < 1980) {
+      return (1 << 21) | (1 << 16);
+    }
+    long date =
+        ((year - 1980) << 9)
+            | ((calendar.get(Calendar.MONTH) + 1) << 5)
+            | calendar.get(Calendar.DAY_OF_MONTH);
+    long time =
+        (calendar.get(Calendar.HOUR_OF_DAY) << 11)
+            | (calendar.get(Calendar.MINUTE) << 5)
+            | (calendar.get(Calendar.SECOND) >> 1);
+    return (date << 16) | time;
+  }
+
+  private static class Entry {
+    private final File source;
+    private final byte[] name;
+    private final long dosTime;
+    private File compressed = null;
+    private boolean stored = false;
+    private long crc = 0;
+    private long size = 0;
+    private long compressedSize = 0;
+    private long offset = 0;
+
+    private Entry(File source) {
+      this.source = source;
+      this.name = source.getName().getBytes(StandardCharsets.UTF_8);
+      this.dosTime = toDosTime(source.lastModified());
+    }
+  }
+
+  private static class CountingOutputStream extends FilterOutputStream {
+    private long count = 0;
+
+    private CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+  }
+}
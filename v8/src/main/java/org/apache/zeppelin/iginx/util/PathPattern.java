@@ -0,0 +1,71 @@
+package org.apache.zeppelin.iginx.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SHOW COLUMNS中的路径模式，与IGinX的规则一致：*匹配任意字符（包括.），不含*时完全匹配。
+ *
+ * <p>编译时按*切分为若干字面量，匹配时依次查找，不使用正则表达式。第一个*之前的字面量即模式的前缀，在按路径排序的列中只需扫描以该前缀开头的区间。
+ */
+public class PathPattern {
+  private final String pattern;
+  private final String prefix;
+  private final String suffix;
+  private final String[] middles;
+  private final boolean wildcard;
+
+  private PathPattern(String pattern) {
+    this.pattern = pattern;
+    List<String> parts = new ArrayList<>();
+    int start = 0;
+    int star;
+    while ((star = pattern.indexOf('*', start)) >= 0) {
+      parts.add(pattern.substring(start, star));
+      start = star + 1;
+    }
+    parts.add(pattern.substring(start));
+    this.wildcard = parts.size() > 1;
+    this.prefix = parts.get(0);
+    this.suffix = parts.get(parts.size() - 1);
+    this.middles =
+        wildcard
+            ? parts.subList(1, parts.size() - 1).stream()
+                .filter(part -> !part.isEmpty())
+                .toArray(String[]::new)
+            : new String[0];
+  }
+
+  public static PathPattern compile(String pattern) {
+    return new PathPattern(pattern);
+  }
+
+  /** 第一个*之前的部分，匹配的路径都以此开头 */
+  public String getPrefix() {
+    return prefix;
+  }
+
+  public boolean matches(String path) {
+    if (!wildcard) {
+      return path.equals(pattern);
+    }
+    int end = path.length() - suffix.length();
+    if (end < prefix.length() || !path.startsWith(prefix) || !path.endsWith(suffix)) {
+      return false;
+    }
+    int from = prefix.length();
+    for (String middle : middles) {
+      int index = path.indexOf(middle, from);
+      if (index < 0 || index + middle.length() > end) {
+        return false;
+      }
+      from = index + middle.length();
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return pattern;
+  }
+}
@@ -0,0 +1,127 @@
+package org.apache.zeppelin.iginx.util;
+
+import cn.edu.tsinghua.iginx.thrift.SqlType;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 只读查询结果的LRU缓存，同时按条目数和估算的字节数限制容量，条目超过ttl后失效。
+ *
+ * <p>key由规范化后的sql、key是否按时间输出以及时间精度组成，任何写操作都会清空整个缓存。
+ *
+ * <p>清空缓存时代数加一。查询在执行前记录代数，写入时代数已变化说明执行期间有写操作，结果可能已过期，不再缓存。
+ */
+public class QueryResultCache {
+  // 每个字符串对象的额外开销估算
+  private static final int STRING_OVERHEAD = 40;
+
+  private final int maxEntries;
+  private final long maxBytes;
+  private final long ttlMs;
+  private final LinkedHashMap<String, CachedResult> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long totalBytes = 0;
+  private long generation = 0;
+
+  public QueryResultCache(int maxEntries, long maxBytes, long ttlMs) {
+    this.maxEntries = maxEntries;
+    this.maxBytes = maxBytes;
+    this.ttlMs = ttlMs;
+  }
+
+  public static String buildKey(String sql, boolean keyTimeEnable, String timePrecision) {
+    String normalized = sql.trim();
+    int end = normalized.length();
+    while (end > 0 && (normalized.charAt(end - 1) == ';' || normalized.charAt(end - 1) == ' ')) {
+      end--;
+    }
+    return normalized.substring(0, end) + '\u0000' + keyTimeEnable + '\u0000' + timePrecision;
+  }
+
+  public synchronized CachedResult get(String key) {
+    CachedResult result = entries.get(key);
+    if (result == null) {
+      return null;
+    }
+    if (System.currentTimeMillis() > result.expireAt) {
+      remove(key);
+      return null;
+    }
+    return result;
+  }
+
+  /** 当前代数，查询执行前获取，写入结果时传给put */
+  public synchronized long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * 缓存查询结果
+   *
+   * @param generation 查询执行前通过getGeneration获取的代数，与当前代数不同时不缓存
+   */
+  public synchronized void put(
+      String key, long generation, SqlType sqlType, List<List<String>> rows) {
+    if (generation != this.generation) {
+      return;
+    }
+    long bytes = estimateBytes(rows);
+    if (maxEntries <= 0 || bytes > maxBytes) {
+      return;
+    }
+    remove(key);
+    entries.put(key, new CachedResult(sqlType, rows, bytes, System.currentTimeMillis() + ttlMs));
+    totalBytes += bytes;
+    Iterator<Map.Entry<String, CachedResult>> iterator = entries.entrySet().iterator();
+    while ((entries.size() > maxEntries || totalBytes > maxBytes) && iterator.hasNext()) {
+      totalBytes -= iterator.next().getValue().bytes;
+      iterator.remove();
+    }
+  }
+
+  public synchronized void invalidateAll() {
+    generation++;
+    entries.clear();
+    totalBytes = 0;
+  }
+
+  private void remove(String key) {
+    CachedResult removed = entries.remove(key);
+    if (removed != null) {
+      totalBytes -= removed.bytes;
+    }
+  }
+
+  private static long estimateBytes(List<List<String>> rows) {
+    long bytes = 0;
+    for (List<String> row : rows) {
+      for (String val : row) {
+        bytes += STRING_OVERHEAD + (val == null ? 0 : 2L * val.length());
+      }
+    }
+    return bytes;
+  }
+
+  public static class CachedResult {
+    private final SqlType sqlType;
+    private final List<List<String>> rows;
+    private final long bytes;
+    private final long expireAt;
+
+    private CachedResult(SqlType sqlType, List<List<String>> rows, long bytes, long expireAt) {
+      this.sqlType = sqlType;
+      this.rows = rows;
+      this.bytes = bytes;
+      this.expireAt = expireAt;
+    }
+
+    public SqlType getSqlType() {
+      return sqlType;
+    }
+
+    public List<List<String>> getRows() {
+      return rows;
+    }
+  }
+}
@@ -0,0 +1,349 @@
+package org.apache.zeppelin.iginx.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 单次扫描的sql词法分析器：按字符串常量和注释之外的分号切分语句，同时合并空白、删除注释、提取语句开头的>指令，并对语句进行分类。
+ *
+ * <p>每条语句只在切分完成时生成一次String，分类只比较关键字，不生成小写副本，也不使用正则。
+ */
+public class SqlLexer {
+  private static final int NORMAL = 0;
+  private static final int QUOTED = 1;
+  private static final int LINE_COMMENT = 2;
+  private static final int BLOCK_COMMENT = 3;
+  private static final int DIRECTIVE = 4;
+
+  // 匹配语句末尾的 INTO OUTFILE "path" AS STREAM [SHOWIMG TRUE|FALSE];
+  private static final int OUTFILE_NONE = 0;
+  private static final int OUTFILE_INTO = 1;
+  private static final int OUTFILE_KEYWORD = 2;
+  private static final int OUTFILE_PATH = 3;
+  private static final int OUTFILE_AS = 4;
+  private static final int OUTFILE_STREAM = 5;
+  private static final int OUTFILE_SHOWIMG = 6;
+  private static final int OUTFILE_SHOWIMG_VALUE = 7;
+
+  private static final String[] LOAD_DATA_KEYWORDS = {"load", "data", "from", "infile"};
+
+  private final String input;
+  private final List<SqlStatement> statements = new ArrayList<>();
+  private final StringBuilder sql = new StringBuilder();
+
+  // 当前语句的状态
+  private List<String> directives = Collections.emptyList();
+  private boolean pendingSpace = false;
+  private int wordCount = 0;
+  private SqlStatement.Type firstWordType = SqlStatement.Type.OTHER;
+  private int loadDataWords = 0;
+  private boolean lastWordAs = false;
+  private boolean asCsv = false;
+  private boolean startsWithCreate = false;
+  private boolean hasFunction = false;
+  private int outfileState = OUTFILE_NONE;
+  private String outfilePath = null;
+  private int outfilePathOffset = -1;
+  private boolean showImg = false;
+  private int parenDepth = 0;
+  private int valuesOffset = -1;
+
+  private SqlLexer(String input) {
+    this.input = input;
+  }
+
+  /**
+   * 切分并分类多条sql语句
+   *
+   * @param input 段落文本
+   * @return 语句列表，空语句会被忽略
+   */
+  public static List<SqlStatement> split(String input) {
+    return new SqlLexer(input).run();
+  }
+
+  private List<SqlStatement> run() {
+    int n = input.length();
+    int state = NORMAL;
+    char quote = 0;
+    int tokenStart = -1;
+    boolean inWord = false;
+    int directiveStart = -1;
+    int i = 0;
+    while (i < n) {
+      char c = input.charAt(i);
+      switch (state) {
+        case QUOTED:
+          sql.append(c);
+          if (c == '\\' && i + 1 < n) {
+            sql.append(input.charAt(i + 1));
+            i += 2;
+            continue;
+          }
+          if (c == quote) {
+            state = NORMAL;
+            onStringLiteral(tokenStart, sql.length());
+          }
+          i++;
+          continue;
+        case LINE_COMMENT:
+          if (c == '\n') {
+            state = NORMAL;
+            pendingSpace = true;
+          }
+          i++;
+          continue;
+        case BLOCK_COMMENT:
+          if (c == '*' && i + 1 < n && input.charAt(i + 1) == '/') {
+            state = NORMAL;
+            pendingSpace = true;
+            i += 2;
+          } else {
+            i++;
+          }
+          continue;
+        case DIRECTIVE:
+          if (Character.isWhitespace(c) || c == ';') {
+            addDirective(input.substring(directiveStart, i));
+            state = NORMAL;
+            // 分号仍由NORMAL状态处理
+            continue;
+          }
+          i++;
+          continue;
+        default:
+          break;
+      }
+
+      if (isWordChar(c)) {
+        if (!inWord) {
+          appendPendingSpace();
+          tokenStart = sql.length();
+          inWord = true;
+        }
+        sql.append(c);
+        i++;
+        continue;
+      }
+      if (inWord) {
+        inWord = false;
+        onWord(tokenStart, sql.length());
+      }
+
+      char next = i + 1 < n ? input.charAt(i + 1) : 0;
+      if (Character.isWhitespace(c)) {
+        pendingSpace = true;
+        i++;
+      } else if (c == '-' && next == '-' && isLineCommentStart(i)) {
+        state = LINE_COMMENT;
+        i += 2;
+      } else if (c == '/' && next == '*') {
+        state = BLOCK_COMMENT;
+        i += 2;
+      } else if (c == '>' && sql.length() == 0) {
+        state = DIRECTIVE;
+        directiveStart = i;
+        i++;
+      } else if (c == ';') {
+        sql.append(';');
+        finishStatement(true);
+        i++;
+      } else if (c == '\'' || c == '"') {
+        appendPendingSpace();
+        tokenStart = sql.length();
+        sql.append(c);
+        quote = c;
+        state = QUOTED;
+        i++;
+      } else {
+        appendPendingSpace();
+        sql.append(c);
+        onPunctuation(c);
+        i++;
+      }
+    }
+
+    if (inWord) {
+      onWord(tokenStart, sql.length());
+    }
+    if (state == DIRECTIVE) {
+      addDirective(input.substring(directiveStart));
+    }
+    finishStatement(false);
+    return statements;
+  }
+
+  /** 只有位于词的边界、且后面是空白或行尾的--才是注释，如select 1--2中的--是两个减号 */
+  private boolean isLineCommentStart(int i) {
+    if (i > 0 && isWordChar(input.charAt(i - 1))) {
+      return false;
+    }
+    return i + 2 >= input.length() || Character.isWhitespace(input.charAt(i + 2));
+  }
+
+  private static boolean isWordChar(char c) {
+    return Character.isLetterOrDigit(c) || c == '_';
+  }
+
+  private void appendPendingSpace() {
+    if (pendingSpace && sql.length() > 0) {
+      sql.append(' ');
+    }
+    pendingSpace = false;
+  }
+
+  private void addDirective(String directive) {
+    if (directives.isEmpty()) {
+      directives = new ArrayList<>();
+    }
+    directives.add(directive);
+  }
+
+  private void onWord(int start, int end) {
+    wordCount++;
+    if (wordCount == 1) {
+      if (wordEquals(start, end, "select")) {
+        firstWordType = SqlStatement.Type.QUERY;
+      } else if (wordEquals(start, end, "explain")) {
+        firstWordType = SqlStatement.Type.EXPLAIN;
+      } else if (wordEquals(start, end, "show")) {
+        firstWordType = SqlStatement.Type.SHOW;
+      } else if (wordEquals(start, end, "insert")) {
+        firstWordType = SqlStatement.Type.INSERT;
+      } else if (wordEquals(start, end, "create")) {
+        startsWithCreate = true;
+      }
+    }
+    if (loadDataWords == wordCount - 1
+        && loadDataWords < LOAD_DATA_KEYWORDS.length
+        && wordEquals(start, end, LOAD_DATA_KEYWORDS[loadDataWords])) {
+      loadDataWords++;
+    }
+    if (lastWordAs && wordEquals(start, end, "csv")) {
+      asCsv = true;
+    }
+    lastWordAs = wordEquals(start, end, "as");
+    if (startsWithCreate && wordEquals(start, end, "function")) {
+      hasFunction = true;
+    }
+    // INSERT语句中括号外的第一个VALUES，用于合并多条INSERT
+    if (firstWordType == SqlStatement.Type.INSERT
+        && valuesOffset < 0
+        && parenDepth == 0
+        && wordEquals(start, end, "values")) {
+      valuesOffset = start;
+    }
+
+    switch (outfileState) {
+      case OUTFILE_INTO:
+        outfileState = wordEquals(start, end, "outfile") ? OUTFILE_KEYWORD : OUTFILE_NONE;
+        break;
+      case OUTFILE_PATH:
+        outfileState = wordEquals(start, end, "as") ? OUTFILE_AS : OUTFILE_NONE;
+        break;
+      case OUTFILE_AS:
+        outfileState = wordEquals(start, end, "stream") ? OUTFILE_STREAM : OUTFILE_NONE;
+        break;
+      case OUTFILE_STREAM:
+        outfileState = wordEquals(start, end, "showimg") ? OUTFILE_SHOWIMG : OUTFILE_NONE;
+        break;
+      case OUTFILE_SHOWIMG:
+        if (wordEquals(start, end, "true") || wordEquals(start, end, "false")) {
+          showImg = wordEquals(start, end, "true");
+          outfileState = OUTFILE_SHOWIMG_VALUE;
+        } else {
+          outfileState = OUTFILE_NONE;
+        }
+        break;
+      default:
+        outfileState = OUTFILE_NONE;
+        break;
+    }
+    if (outfileState == OUTFILE_NONE && wordEquals(start, end, "into")) {
+      outfileState = OUTFILE_INTO;
+    }
+  }
+
+  private void onStringLiteral(int start, int end) {
+    lastWordAs = false;
+    if (outfileState == OUTFILE_KEYWORD) {
+      outfilePath = sql.substring(start + 1, end - 1);
+      outfilePathOffset = start;
+      outfileState = OUTFILE_PATH;
+    } else {
+      outfileState = OUTFILE_NONE;
+    }
+  }
+
+  private void onPunctuation(char c) {
+    if (c == '(') {
+      parenDepth++;
+    } else if (c == ')' && parenDepth > 0) {
+      parenDepth--;
+    }
+    lastWordAs = false;
+    outfileState = OUTFILE_NONE;
+  }
+
+  private boolean wordEquals(int start, int end, String keyword) {
+    if (end - start != keyword.length()) {
+      return false;
+    }
+    for (int i = 0; i < keyword.length(); i++) {
+      if (Character.toLowerCase(sql.charAt(start + i)) != keyword.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * 结束当前语句
+   *
+   * @param terminated 语句是否以分号结尾，OUTFILE语句必须以分号结尾
+   */
+  private void finishStatement(boolean terminated) {
+    boolean empty = sql.length() == 0 || (sql.length() == 1 && sql.charAt(0) == ';');
+    if (!empty) {
+      statements.add(
+          new SqlStatement(
+              sql.toString(),
+              directives,
+              resolveType(terminated),
+              outfilePath,
+              outfilePathOffset,
+              showImg,
+              valuesOffset));
+    }
+    sql.setLength(0);
+    directives = Collections.emptyList();
+    pendingSpace = false;
+    wordCount = 0;
+    firstWordType = SqlStatement.Type.OTHER;
+    loadDataWords = 0;
+    lastWordAs = false;
+    asCsv = false;
+    startsWithCreate = false;
+    hasFunction = false;
+    outfileState = OUTFILE_NONE;
+    outfilePath = null;
+    outfilePathOffset = -1;
+    showImg = false;
+    parenDepth = 0;
+    valuesOffset = -1;
+  }
+
+  private SqlStatement.Type resolveType(boolean terminated) {
+    if (terminated && (outfileState == OUTFILE_STREAM || outfileState == OUTFILE_SHOWIMG_VALUE)) {
+      return SqlStatement.Type.OUTFILE;
+    }
+    if (loadDataWords == LOAD_DATA_KEYWORDS.length && asCsv) {
+      return SqlStatement.Type.LOAD_DATA;
+    }
+    if (startsWithCreate && hasFunction) {
+      return SqlStatement.Type.CREATE_FUNCTION;
+    }
+    return firstWordType;
+  }
+}
@@ -0,0 +1,171 @@
+package org.apache.zeppelin.iginx.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** SqlLexer切分出的单条语句，包含规范化后的sql、语句开头的>指令以及语句分类 */
+public class SqlStatement {
+  public enum Type {
+    QUERY,
+    EXPLAIN,
+    SHOW,
+    INSERT,
+    OUTFILE,
+    LOAD_DATA,
+    CREATE_FUNCTION,
+    OTHER
+  }
+
+  private final String sql;
+  private final List<String> directives;
+  private final Type type;
+  private final String outfilePath;
+  private final int outfilePathOffset;
+  private final boolean showImg;
+  private final int valuesOffset;
+
+  public SqlStatement(
+      String sql,
+      List<String> directives,
+      Type type,
+      String outfilePath,
+      int outfilePathOffset,
+      boolean showImg,
+      int valuesOffset) {
+    this.sql = sql;
+    this.directives = directives;
+    this.type = type;
+    this.outfilePath = outfilePath;
+    this.outfilePathOffset = outfilePathOffset;
+    this.showImg = showImg;
+    this.valuesOffset = valuesOffset;
+  }
+
+  /** 去掉>指令后的sql，空白已合并为单个空格，注释已删除，字符串常量保持原样 */
+  public String getSql() {
+    return sql;
+  }
+
+  /** 语句开头的>指令，如>graph.tree */
+  public List<String> getDirectives() {
+    return directives;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /** 不修改数据和元数据的语句 */
+  public boolean isReadOnly() {
+    return type == Type.QUERY || type == Type.EXPLAIN || type == Type.SHOW || type == Type.OUTFILE;
+  }
+
+  /** INTO OUTFILE "path" AS STREAM 中的path，仅OUTFILE语句有效 */
+  public String getOutfilePath() {
+    return outfilePath;
+  }
+
+  /**
+   * 将INTO OUTFILE "path"中的path替换为newPath，单引号和双引号的路径都按词法分析时记录的位置替换
+   *
+   * @return 替换后的sql，不是OUTFILE语句时返回原sql
+   */
+  public String replaceOutfilePath(String newPath) {
+    if (type != Type.OUTFILE || outfilePathOffset < 0) {
+      return sql;
+    }
+    char quote = sql.charAt(outfilePathOffset);
+    int end = outfilePathOffset + outfilePath.length() + 2;
+    return sql.substring(0, outfilePathOffset) + quote + newPath + quote + sql.substring(end);
+  }
+
+  /** OUTFILE语句末尾的showimg参数 */
+  public boolean isShowImg() {
+    return showImg;
+  }
+
+  /** 不带指令的INSERT INTO ... VALUES ...语句，可以与前缀相同的语句合并执行 */
+  public boolean isCoalescableInsert() {
+    return type == Type.INSERT && valuesOffset > 0 && directives.isEmpty();
+  }
+
+  /** INSERT语句中VALUES之前的部分，如insert into us.d1(key, s1) */
+  public String getInsertPrefix() {
+    return sql.substring(0, valuesOffset).trim();
+  }
+
+  /**
+   * INSERT INTO语句写入的路径前缀，如insert into us.d1(key, s1) values ...中的us.d1
+   *
+   * @return 不是INSERT语句或无法识别时返回null
+   */
+  public String getInsertTarget() {
+    if (type != Type.INSERT) {
+      return null;
+    }
+    int into = -1;
+    for (int i = 0; i + 5 <= sql.length(); i++) {
+      if (sql.regionMatches(true, i, " into ", 0, 6)) {
+        into = i + 6;
+        break;
+      }
+    }
+    int paren = into < 0 ? -1 : sql.indexOf('(', into);
+    if (paren < 0) {
+      return null;
+    }
+    String target = sql.substring(into, paren).trim();
+    return target.isEmpty() || target.contains(" ") ? null : target;
+  }
+
+  /**
+   * 只带路径的SHOW COLUMNS语句中的路径，如show columns us.*, a.b.c;中的us.*和a.b.c
+   *
+   * @return 不是SHOW COLUMNS语句或带有LIMIT等其他子句时返回null，不带路径时返回空列表
+   */
+  public List<String> getShowColumnsPaths() {
+    if (type != Type.SHOW || !sql.regionMatches(true, 0, "show columns", 0, 12)) {
+      return null;
+    }
+    int end = sql.length();
+    while (end > 12 && (sql.charAt(end - 1) == ';' || sql.charAt(end - 1) == ' ')) {
+      end--;
+    }
+    if (end == 12) {
+      return Collections.emptyList();
+    }
+    if (sql.charAt(12) != ' ') {
+      return null;
+    }
+    List<String> paths = new ArrayList<>();
+    for (String path : sql.substring(13, end).split(",")) {
+      path = path.trim();
+      if (path.isEmpty()) {
+        return null;
+      }
+      for (int i = 0; i < path.length(); i++) {
+        char c = path.charAt(i);
+        if (!Character.isLetterOrDigit(c) && c != '_' && c != '-' && c != '.' && c != '*') {
+          return null;
+        }
+      }
+      paths.add(path);
+    }
+    return paths;
+  }
+
+  /** INSERT语句中VALUES之后、分号之前的值列表，如(1, 2), (3, 4) */
+  public String getInsertValues() {
+    int end = sql.length();
+    while (end > valuesOffset && (sql.charAt(end - 1) == ';' || sql.charAt(end - 1) == ' ')) {
+      end--;
+    }
+    return sql.substring(valuesOffset + "values".length(), end).trim();
+  }
+
+  @Override
+  public String toString() {
+    return sql;
+  }
+}
@@ -1,12 +1,20 @@
 package org.apache.zeppelin.iginx.util;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class TreeNode {
+  // 子节点超过该数量后建立按名称查找的索引
+  static final int CHILD_INDEX_THRESHOLD = 8;
+
+  // 为null时由父节点路径和节点名拼接得到
   String path;
   String value;
+  TreeNode parent;
   List<TreeNode> children;
+  Map<String, TreeNode> childIndex;
   List<String> columns;
 
   public TreeNode(String path, String value, List<String> columns) {
@@ -22,6 +30,58 @@ public class TreeNode {
     this.children = new ArrayList<>();
   }
 
+  /** 作为parent的子节点，路径在需要时计算 */
+  public TreeNode(TreeNode parent, String value) {
+    this.parent = parent;
+    this.value = value;
+    this.children = new ArrayList<>(0);
+  }
+
+  public String getPath() {
+    if (path != null || parent == null) {
+      return path;
+    }
+    return parent.getPath() + "." + value;
+  }
+
+  public TreeNode getParent() {
+    return parent;
+  }
+
+  /** 按名称查找子节点 */
+  public TreeNode getChild(String name) {
+    if (childIndex != null) {
+      return childIndex.get(name);
+    }
+    for (TreeNode child : children) {
+      if (child.value.equals(name)) {
+        return child;
+      }
+    }
+    return null;
+  }
+
+  /** 添加子节点，调用方需保证同名子节点不存在 */
+  public void addChild(TreeNode child) {
+    children.add(child);
+    if (childIndex != null) {
+      childIndex.put(child.value, child);
+    } else if (children.size() > CHILD_INDEX_THRESHOLD) {
+      rebuildChildIndex();
+    }
+  }
+
+  private void rebuildChildIndex() {
+    if (children.size() <= CHILD_INDEX_THRESHOLD) {
+      childIndex = null;
+      return;
+    }
+    childIndex = new HashMap<>(children.size() * 2);
+    for (TreeNode node : children) {
+      childIndex.put(node.value, node);
+    }
+  }
+
   public String getValue() {
     return value;
   }
@@ -36,6 +96,7 @@ public class TreeNode {
 
   public void setChildren(List<TreeNode> children) {
     this.children = children;
+    rebuildChildIndex();
   }
 
   public List<String> getColumns() {
@@ -0,0 +1,84 @@
+package org.apache.zeppelin.iginx.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 边读取文件边输出zip流，不在磁盘上生成zip文件。
+ *
+ * <p>图片、压缩包等已经压缩过的文件以STORED方式写入，STORED条目需要预先知道CRC，因此这类文件会被读取两次；其余文件按给定的压缩级别DEFLATED。
+ */
+public class ZipStreamer {
+  public static final String ALL_FILE_ZIP = "all_file.zip";
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final Set<String> COMPRESSED_EXTENSIONS =
+      new HashSet<>(
+          Arrays.asList(
+              "jpg", "jpeg", "png", "gif", "webp", "zip", "gz", "tgz", "bz2", "xz", "7z", "rar",
+              "zst", "mp3", "mp4", "avi", "mkv", "mov", "parquet"));
+
+  private ZipStreamer() {}
+
+  /** 文件是否已经压缩过，再次DEFLATE只会浪费CPU */
+  public static boolean isCompressed(String fileName) {
+    int dot = fileName.lastIndexOf('.');
+    return dot >= 0
+        && COMPRESSED_EXTENSIONS.contains(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+  }
+
+  /**
+   * 将文件列表写成zip流，out不会被关闭
+   *
+   * @param files 文件列表，条目名为文件名
+   * @param out 输出流
+   * @param level DEFLATED条目的压缩级别，0-9，-1为默认级别
+   */
+  public static void writeZip(List<File> files, OutputStream out, int level) throws IOException {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    ZipOutputStream zos = new ZipOutputStream(out);
+    zos.setLevel(level);
+    for (File file : files) {
+      ZipEntry entry = new ZipEntry(file.getName());
+      entry.setTime(file.lastModified());
+      if (isCompressed(file.getName()) || level == 0) {
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(file.length());
+        entry.setCompressedSize(file.length());
+        entry.setCrc(crc32(file, buffer));
+      }
+      zos.putNextEntry(entry);
+      try (InputStream in = new FileInputStream(file)) {
+        int len;
+        while ((len = in.read(buffer)) != -1) {
+          zos.write(buffer, 0, len);
+        }
+      }
+      zos.closeEntry();
+    }
+    zos.finish();
+    zos.flush();
+  }
+
+  private static long crc32(File file, byte[] buffer) throws IOException {
+    CRC32 crc = new CRC32();
+    try (InputStream in = new FileInputStream(file)) {
+      int len;
+      while ((len = in.read(buffer)) != -1) {
+        crc.update(buffer, 0, len);
+      }
+    }
+    return crc.getValue();
+  }
+}
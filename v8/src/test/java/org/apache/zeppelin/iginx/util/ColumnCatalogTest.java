@@ -0,0 +1,170 @@
+package org.apache.zeppelin.iginx.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.zeppelin.interpreter.thrift.InterpreterCompletion;
+import org.junit.jupiter.api.Test;
+
+class ColumnCatalogTest {
+  private static final List<String> HEADER = Arrays.asList("Path", "DataType");
+
+  @Test
+  public void testMergeDirtyPrefix() throws InterruptedException {
+    FakeLoader loader = new FakeLoader("a.x", "a.y", "ab.z", "b.w");
+    ColumnCatalog catalog = new ColumnCatalog(loader, 0, 0);
+    try {
+      catalog.start();
+      await(catalog, "a.x", "a.y", "ab.z", "b.w");
+
+      // 只重新读取a下的列，ab和b下的列保持不变
+      loader.columns.remove("a.x");
+      loader.columns.put("a.v", "LONG");
+      loader.columns.put("ab.q", "LONG");
+      catalog.markDirty("a");
+      await(catalog, "a.v", "a.y", "ab.z", "b.w");
+      assertEquals(Arrays.asList(null, "a"), loader.prefixes);
+      assertEquals(HEADER, catalog.getSnapshot().getHeader());
+    } finally {
+      catalog.close();
+    }
+  }
+
+  @Test
+  public void testComplete() throws InterruptedException {
+    FakeLoader loader = new FakeLoader("us.d1.s1", "us.d1.s2", "us.d2.s1", "usa.d1", "x.y");
+    ColumnCatalog catalog = new ColumnCatalog(loader, 0, 0);
+    try {
+      catalog.start();
+      await(catalog, "us.d1.s1", "us.d1.s2", "us.d2.s1", "usa.d1", "x.y");
+
+      assertEquals(Arrays.asList("us", "usa"), names(catalog.complete("select u", 8, 10)));
+      assertEquals(Arrays.asList("d1", "d2"), names(catalog.complete("select us.", 10, 10)));
+      assertEquals(Arrays.asList("s1", "s2"), names(catalog.complete("us.d1.s from", 6, 10)));
+      assertEquals(Collections.singletonList("us"), names(catalog.complete("u", 1, 1)));
+      assertEquals(Collections.emptyList(), names(catalog.complete("select z", 8, 10)));
+      assertEquals("path", catalog.complete("x", 1, 10).get(0).getMeta());
+    } finally {
+      catalog.close();
+    }
+  }
+
+  @Test
+  public void testSelect() throws InterruptedException {
+    FakeLoader loader = new FakeLoader("us.d1.s1", "us.d1.s2", "us.d2.s1", "usa.d1");
+    ColumnCatalog catalog = new ColumnCatalog(loader, 0, 0);
+    try {
+      catalog.start();
+      await(catalog, "us.d1.s1", "us.d1.s2", "us.d2.s1", "usa.d1");
+      ColumnCatalog.Snapshot snapshot = catalog.getSnapshot();
+
+      assertEquals(5, snapshot.select(Collections.emptyList()).size());
+      // 多个模式匹配同一列时只返回一次，并保持路径顺序
+      List<List<String>> result =
+          snapshot.select(
+              Arrays.asList(PathPattern.compile("us.*.s1"), PathPattern.compile("us.d1.*")));
+      assertEquals(HEADER, result.get(0));
+      assertEquals(Arrays.asList("us.d1.s1", "us.d1.s2", "us.d2.s1"), paths(result.subList(1, 4)));
+      assertEquals(4, result.size());
+      assertEquals(
+          Collections.singletonList("usa.d1"),
+          paths(
+              snapshot
+                  .select(Collections.singletonList(PathPattern.compile("usa.d1")))
+                  .subList(1, 2)));
+    } finally {
+      catalog.close();
+    }
+  }
+
+  @Test
+  public void testFreshSnapshotAfterWrite() throws InterruptedException {
+    FakeLoader loader = new FakeLoader("a.x");
+    ColumnCatalog catalog = new ColumnCatalog(loader, 0, 0);
+    try {
+      catalog.start();
+      await(catalog, "a.x");
+      assertTrue(catalog.getFreshSnapshot(60_000) != null);
+
+      // 写操作之后、重新读取之前，快照不可信
+      loader.columns.put("a.y", "LONG");
+      catalog.markDirty("a");
+      await(catalog, "a.x", "a.y");
+      assertEquals(1, catalog.getSnapshot().getVersion());
+      assertTrue(catalog.getFreshSnapshot(60_000) != null);
+    } finally {
+      catalog.close();
+    }
+  }
+
+  /** 等待后台刷新后快照中的路径变为expected */
+  private static void await(ColumnCatalog catalog, String... expected) throws InterruptedException {
+    List<String> want = Arrays.asList(expected);
+    long deadline = System.currentTimeMillis() + 10_000;
+    List<String> actual = paths(catalog.getSnapshot().getRows());
+    while (!actual.equals(want) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+      actual = paths(catalog.getSnapshot().getRows());
+    }
+    assertEquals(want, actual);
+  }
+
+  private static List<String> paths(String[][] rows) {
+    List<String> paths = new ArrayList<>();
+    for (String[] row : rows) {
+      paths.add(row[0]);
+    }
+    return paths;
+  }
+
+  private static List<String> paths(List<List<String>> rows) {
+    List<String> paths = new ArrayList<>();
+    for (List<String> row : rows) {
+      paths.add(row.get(0));
+    }
+    return paths;
+  }
+
+  private static List<String> names(List<InterpreterCompletion> completions) {
+    List<String> names = new ArrayList<>();
+    for (InterpreterCompletion completion : completions) {
+      names.add(completion.getName());
+    }
+    return names;
+  }
+
+  /** 按前缀返回columns中的列，并记录每次读取的前缀 */
+  private static class FakeLoader implements ColumnCatalog.Loader {
+    private final Map<String, String> columns = new ConcurrentHashMap<>();
+    private final List<String> prefixes = Collections.synchronizedList(new ArrayList<>());
+
+    FakeLoader(String... paths) {
+      for (String path : paths) {
+        columns.put(path, "LONG");
+      }
+    }
+
+    @Override
+    public List<List<String>> load(String prefix) {
+      prefixes.add(prefix);
+      List<List<String>> result = new ArrayList<>();
+      result.add(HEADER);
+      // 返回顺序与路径顺序无关
+      Map<String, String> sorted = new TreeMap<>(Collections.reverseOrder());
+      sorted.putAll(columns);
+      for (Map.Entry<String, String> entry : sorted.entrySet()) {
+        if (prefix == null || entry.getKey().startsWith(prefix + ".")) {
+          result.add(Arrays.asList(entry.getKey(), entry.getValue()));
+        }
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package org.apache.zeppelin.iginx.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class CsvChunkReaderTest {
+
+  @Test
+  public void testQuotedNewlineAtChunkEdge() throws IOException {
+    String header = "key,a\n";
+    String body = "1,\"x\ny\"\n2,\"multi\nline\nvalue\"\n3,z\n4,\"\n\"\n";
+    File file = write(header + body);
+    try {
+      // 每种块大小下，块的边界都不能落在双引号内的换行上
+      for (int chunkSize = 1; chunkSize <= body.length() + 1; chunkSize++) {
+        List<String> chunks = readAll(file, chunkSize, true);
+        StringBuilder joined = new StringBuilder();
+        for (String chunk : chunks) {
+          assertTrue(chunk.startsWith(header), chunk);
+          String records = chunk.substring(header.length());
+          assertEquals(0, countQuotes(records) % 2, "chunk size " + chunkSize);
+          assertTrue(records.endsWith("\n"), "chunk size " + chunkSize);
+          joined.append(records);
+        }
+        assertEquals(body, joined.toString(), "chunk size " + chunkSize);
+      }
+    } finally {
+      Files.deleteIfExists(file.toPath());
+    }
+  }
+
+  @Test
+  public void testWithoutHeaderAndTrailingNewline() throws IOException {
+    File file = write("1,\"a\nb\"\n2,c");
+    try {
+      List<String> chunks = readAll(file, 4, false);
+      assertEquals(2, chunks.size());
+      assertEquals("1,\"a\nb\"\n", chunks.get(0));
+      assertEquals("2,c", chunks.get(1));
+    } finally {
+      Files.deleteIfExists(file.toPath());
+    }
+  }
+
+  @Test
+  public void testHeaderOnly() throws IOException {
+    File file = write("key,a\n");
+    try {
+      List<String> chunks = readAll(file, 16, true);
+      assertEquals(1, chunks.size());
+      assertEquals("key,a\n", chunks.get(0));
+    } finally {
+      Files.deleteIfExists(file.toPath());
+    }
+  }
+
+  private static List<String> readAll(File file, int chunkSize, boolean hasHeader)
+      throws IOException {
+    List<String> chunks = new ArrayList<>();
+    try (CsvChunkReader reader = new CsvChunkReader(file, chunkSize, hasHeader)) {
+      ByteBuffer chunk;
+      while ((chunk = reader.nextChunk()) != null) {
+        byte[] bytes = new byte[chunk.remaining()];
+        chunk.get(bytes);
+        chunks.add(new String(bytes, StandardCharsets.UTF_8));
+      }
+      assertEquals(chunks.size(), reader.getChunkCount());
+    }
+    return chunks;
+  }
+
+  private static int countQuotes(String text) {
+    int count = 0;
+    for (int i = 0; i < text.length(); i++) {
+      if (text.charAt(i) == '"') {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private static File write(String text) throws IOException {
+    File file = Files.createTempFile("chunk", ".csv").toFile();
+    Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+}
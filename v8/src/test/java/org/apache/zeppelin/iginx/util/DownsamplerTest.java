@@ -0,0 +1,106 @@
+package org.apache.zeppelin.iginx.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class DownsamplerTest {
+
+  @Test
+  public void testSmallResultUnchanged() {
+    Downsampler downsampler = new Downsampler(Downsampler.Method.LTTB, 100, 2, true);
+    feed(downsampler, 100, 1);
+    List<String[]> rows = downsampler.finish();
+    assertEquals(100, rows.size());
+    for (int i = 0; i < rows.size(); i++) {
+      assertEquals(String.valueOf(i), rows.get(i)[0]);
+    }
+  }
+
+  @Test
+  public void testLttbCount() {
+    int points = 500;
+    Downsampler downsampler = new Downsampler(Downsampler.Method.LTTB, points, 2, true);
+    feed(downsampler, 100000, 1);
+    List<String[]> rows = downsampler.finish();
+    assertEquals(100000, downsampler.getRows());
+    // 单个数值列时LTTB恰好选出目标点数，首尾两行总是保留
+    assertEquals(points, rows.size());
+    assertEquals("0", rows.get(0)[0]);
+    assertEquals("99999", rows.get(rows.size() - 1)[0]);
+    assertAscending(rows);
+  }
+
+  @Test
+  public void testMinMaxCount() {
+    int points = 500;
+    Downsampler downsampler = new Downsampler(Downsampler.Method.MINMAX, points, 3, true);
+    feed(downsampler, 100000, 2);
+    List<String[]> rows = downsampler.finish();
+    // 每列每个桶最多贡献最小值和最大值两行，另加首尾两行
+    assertTrue(rows.size() > points / 2, String.valueOf(rows.size()));
+    assertTrue(rows.size() <= points * 2 + 2, String.valueOf(rows.size()));
+    assertEquals("0", rows.get(0)[0]);
+    assertEquals("99999", rows.get(rows.size() - 1)[0]);
+    assertAscending(rows);
+  }
+
+  @Test
+  public void testMinMaxKeepsExtremes() {
+    Downsampler downsampler = new Downsampler(Downsampler.Method.MINMAX, 10, 2, true);
+    for (long i = 0; i < 1000; i++) {
+      double value = i == 333 ? 1e9 : i == 777 ? -1e9 : i % 10;
+      downsampler.add(
+          new Object[] {i, value}, new String[] {String.valueOf(i), String.valueOf(value)});
+    }
+    List<String[]> rows = downsampler.finish();
+    assertTrue(contains(rows, "333"));
+    assertTrue(contains(rows, "777"));
+    assertTrue(rows.size() <= 10 + 2, String.valueOf(rows.size()));
+  }
+
+  @Test
+  public void testNonNumericColumnsKeepRows() {
+    Downsampler downsampler = new Downsampler(Downsampler.Method.LTTB, 10, 2, true);
+    for (long i = 0; i < 1000; i++) {
+      downsampler.add(new Object[] {i, "text" + i}, new String[] {String.valueOf(i), "text" + i});
+    }
+    List<String[]> rows = downsampler.finish();
+    assertTrue(rows.size() > 2 && rows.size() <= 1000);
+    assertArrayEquals(new String[] {"0", "text0"}, rows.get(0));
+    assertAscending(rows);
+  }
+
+  private static void feed(Downsampler downsampler, int rows, int valueColumns) {
+    for (long i = 0; i < rows; i++) {
+      Object[] raw = new Object[valueColumns + 1];
+      String[] formatted = new String[valueColumns + 1];
+      raw[0] = i;
+      formatted[0] = String.valueOf(i);
+      for (int c = 1; c <= valueColumns; c++) {
+        double value = Math.sin(i / (100.0 * c)) * 100 + (i * 7919 % 13);
+        raw[c] = value;
+        formatted[c] = String.valueOf(value);
+      }
+      downsampler.add(raw, formatted);
+    }
+  }
+
+  private static void assertAscending(List<String[]> rows) {
+    for (int i = 1; i < rows.size(); i++) {
+      assertTrue(Long.parseLong(rows.get(i - 1)[0]) < Long.parseLong(rows.get(i)[0]));
+    }
+  }
+
+  private static boolean contains(List<String[]> rows, String key) {
+    for (String[] row : rows) {
+      if (row[0].equals(key)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,68 @@
+package org.apache.zeppelin.iginx.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class FileResponderTest {
+
+  @Test
+  public void testParseRanges() {
+    List<long[]> ranges = FileResponder.parseRanges("bytes=0-99", 1000);
+    assertEquals(1, ranges.size());
+    assertArrayEquals(new Long[] {0L, 99L}, box(ranges.get(0)));
+
+    // 开放结尾、后缀范围以及超出文件长度的结尾
+    ranges = FileResponder.parseRanges("Bytes=900-, -100, 950-2000", 1000);
+    assertEquals(3, ranges.size());
+    assertArrayEquals(new Long[] {900L, 999L}, box(ranges.get(0)));
+    assertArrayEquals(new Long[] {900L, 999L}, box(ranges.get(1)));
+    assertArrayEquals(new Long[] {950L, 999L}, box(ranges.get(2)));
+
+    // 后缀超过文件长度时返回整个文件
+    assertArrayEquals(
+        new Long[] {0L, 999L}, box(FileResponder.parseRanges("bytes=-5000", 1000).get(0)));
+  }
+
+  @Test
+  public void testUnsatisfiableAndIgnoredRanges() {
+    // 起点超过文件长度的范围无法满足
+    assertTrue(FileResponder.parseRanges("bytes=1000-1100", 1000).isEmpty());
+    assertTrue(FileResponder.parseRanges("bytes=-0", 1000).isEmpty());
+    assertEquals(1, FileResponder.parseRanges("bytes=2000-, 0-0", 1000).size());
+
+    // 格式错误时忽略Range，返回整个文件
+    assertNull(FileResponder.parseRanges("items=0-1", 1000));
+    assertNull(FileResponder.parseRanges("bytes=5-1", 1000));
+    assertNull(FileResponder.parseRanges("bytes=a-b", 1000));
+    assertNull(FileResponder.parseRanges("bytes=10", 1000));
+    StringBuilder many = new StringBuilder("bytes=0-0");
+    for (int i = 1; i <= 32; i++) {
+      many.append(',').append(i).append('-').append(i);
+    }
+    assertNull(FileResponder.parseRanges(many.toString(), 1000));
+  }
+
+  @Test
+  public void testNegotiateEncoding() {
+    assertNull(FileResponder.negotiateEncoding(null));
+    assertNull(FileResponder.negotiateEncoding(""));
+    assertNull(FileResponder.negotiateEncoding("br, identity"));
+    assertEquals("gzip", FileResponder.negotiateEncoding("gzip, deflate, br"));
+    assertEquals("gzip", FileResponder.negotiateEncoding("x-gzip"));
+    assertEquals("deflate", FileResponder.negotiateEncoding("deflate"));
+    assertEquals("deflate", FileResponder.negotiateEncoding("gzip;q=0.5, deflate;q=0.8"));
+    assertEquals("gzip", FileResponder.negotiateEncoding("*"));
+    assertEquals("deflate", FileResponder.negotiateEncoding("gzip;q=0, *"));
+    assertNull(FileResponder.negotiateEncoding("gzip;q=0, deflate;q=0"));
+    assertNull(FileResponder.negotiateEncoding("gzip;q=abc"));
+  }
+
+  private static Long[] box(long[] range) {
+    return new Long[] {range[0], range[1]};
+  }
+}
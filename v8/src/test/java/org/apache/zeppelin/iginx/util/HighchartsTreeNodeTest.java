@@ -0,0 +1,46 @@
+package org.apache.zeppelin.iginx.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import org.junit.jupiter.api.Test;
+
+class HighchartsTreeNodeTest {
+
+  @Test
+  public void testWriteJsonFieldOrder() throws IOException {
+    assertEquals(
+        "{\"childCount\":2,\"depth\":1,\"id\":\"0.1\",\"name\":\"us\",\"parent\":\"0\"}",
+        write("0.1", "us", "0", 1, 2));
+    // 根节点的parent固定为undefined，childCount为null时省略
+    assertEquals(
+        "{\"depth\":0,\"id\":\"0\",\"name\":\"root\",\"parent\":\"undefined\"}",
+        write("0", "root", null, 0, null));
+  }
+
+  @Test
+  public void testWriteStringEscaping() throws IOException {
+    assertEquals(
+        "{\"depth\":1,\"id\":\"a\\\"b\\\\c\",\"name\":\"x\\ny\\rz\\tw\\u0001\",\"parent\":\"p\"}",
+        write("a\"b\\c", "x\ny\rz\tw\u0001", "p", 1, null));
+  }
+
+  @Test
+  public void testScriptEndTagIsEscaped() throws IOException {
+    String json = write("</script><script>alert(1)</script>", "中文", "p", 1, null);
+    // 节点JSON嵌在<script>中，不能出现<
+    assertEquals(-1, json.indexOf('<'));
+    assertEquals(
+        "{\"depth\":1,\"id\":\"\\u003c/script>\\u003cscript>alert(1)\\u003c/script>\","
+            + "\"name\":\"中文\",\"parent\":\"p\"}",
+        json);
+  }
+
+  private static String write(String id, String name, String parent, int depth, Integer childCount)
+      throws IOException {
+    StringWriter out = new StringWriter();
+    HighchartsTreeNode.writeJson(out, id, name, parent, depth, childCount);
+    return out.toString();
+  }
+}
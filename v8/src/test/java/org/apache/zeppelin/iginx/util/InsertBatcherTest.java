@@ -0,0 +1,68 @@
+package org.apache.zeppelin.iginx.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class InsertBatcherTest {
+
+  @Test
+  public void testFindRunEnd() {
+    List<SqlStatement> statements =
+        SqlLexer.split(
+            "insert into us.d1(key, s1) values (1, 1);\n"
+                + "insert into us.d1(key, s1) values (2, 2);\n"
+                + "insert into us.d1(key, s2) values (3, 3);\n"
+                + "select * from us.d1;\n"
+                + "insert into us.d1(key, s2) values (4, 4);");
+    // VALUES之前的部分不同时不合并
+    assertEquals(2, InsertBatcher.findRunEnd(statements, 0));
+    assertEquals(3, InsertBatcher.findRunEnd(statements, 2));
+    // 非INSERT语句单独执行
+    assertEquals(4, InsertBatcher.findRunEnd(statements, 3));
+    assertEquals(5, InsertBatcher.findRunEnd(statements, 4));
+  }
+
+  @Test
+  public void testMergeByBatchSize() {
+    List<SqlStatement> statements =
+        SqlLexer.split(
+            "select 1 from t;\n"
+                + "insert into t(key, a) values (1, 'x;y');\n"
+                + "insert into t(key, a) values (2, 'b'), (3, 'c');\n"
+                + "insert into t(key, a) values (4, 'd');");
+    int end = InsertBatcher.findRunEnd(statements, 1);
+    assertEquals(4, end);
+
+    List<InsertBatcher.Batch> batches = InsertBatcher.merge(statements.subList(1, end), 1, 2);
+    assertEquals(2, batches.size());
+
+    InsertBatcher.Batch first = batches.get(0);
+    assertEquals(1, first.getFrom());
+    assertEquals(3, first.getTo());
+    assertEquals(2, first.getStatementCount());
+    assertEquals(
+        "insert into t(key, a) values (1, 'x;y'), (2, 'b'), (3, 'c');",
+        first.getStatement().getSql());
+    assertEquals(SqlStatement.Type.INSERT, first.getStatement().getType());
+
+    InsertBatcher.Batch second = batches.get(1);
+    assertEquals(3, second.getFrom());
+    assertEquals(4, second.getTo());
+    assertEquals("insert into t(key, a) values (4, 'd');", second.getStatement().getSql());
+  }
+
+  @Test
+  public void testMergedStatementCanBeMergedAgain() {
+    List<SqlStatement> statements =
+        SqlLexer.split(
+            "insert into t(key, a) values (1, 1);\ninsert into t(key, a) values (2, 2);");
+    InsertBatcher.Batch batch = InsertBatcher.merge(statements, 0, 0).get(0);
+    // batchSize小于1时按1处理
+    assertEquals(1, batch.getStatementCount());
+    SqlStatement merged = batch.getStatement();
+    assertEquals("insert into t(key, a)", merged.getInsertPrefix());
+    assertEquals("(1, 1)", merged.getInsertValues());
+  }
+}
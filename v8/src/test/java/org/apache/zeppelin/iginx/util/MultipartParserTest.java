@@ -0,0 +1,134 @@
+package org.apache.zeppelin.iginx.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+
+class MultipartParserTest {
+  private static final String BOUNDARY = "----zeppelinBoundary";
+  private static final int BUFFER_SIZE = 256 * 1024;
+
+  @Test
+  public void testDelimiterAcrossBufferBoundary() throws IOException {
+    File dir = Files.createTempDirectory("multipart").toFile();
+    try {
+      String prefix = "--" + BOUNDARY + "\r\n" + disposition("a.csv") + "\r\n\r\n";
+      int delimiterLength = ("\r\n--" + BOUNDARY).length();
+      // 解析前在缓冲区开头补了CRLF，使文件结尾的分隔符从缓冲区末尾之前开始，跨越第一次读取的边界
+      for (int shift = -delimiterLength - 2; shift <= 2; shift++) {
+        int fileSize = BUFFER_SIZE - 2 - prefix.length() + shift;
+        byte[] content = content(fileSize);
+        byte[] body = body(prefix, content, "\r\n--" + BOUNDARY + "--\r\n");
+
+        MultipartParser.Result result =
+            new MultipartParser(new ByteArrayInputStream(body), BOUNDARY, 0).parse(dir);
+        assertEquals("a.csv", result.getFileName());
+        assertEquals(fileSize, result.getFileSize());
+        assertArrayEquals(content, Files.readAllBytes(result.getFile().toPath()));
+      }
+    } finally {
+      FileUtils.deleteQuietly(dir);
+    }
+  }
+
+  @Test
+  public void testFieldsAndFile() throws IOException {
+    File dir = Files.createTempDirectory("multipart").toFile();
+    try {
+      String text =
+          "--"
+              + BOUNDARY
+              + "\r\nContent-Disposition: form-data; name=\"paragraphId\"\r\n\r\np1\r\n--"
+              + BOUNDARY
+              + "\r\n"
+              + disposition("../b.csv")
+              + "\r\n\r\n";
+      byte[] body = body(text, content(3 * BUFFER_SIZE), "\r\n--" + BOUNDARY + "--\r\n");
+
+      MultipartParser.Result result =
+          new MultipartParser(new ByteArrayInputStream(body), BOUNDARY, 0).parse(dir);
+      assertEquals("p1", result.getField("paragraphId"));
+      assertEquals("b.csv", result.getFileName());
+      assertEquals(new File(dir, "b.csv"), result.getFile());
+      assertEquals(3 * BUFFER_SIZE, result.getFileSize());
+    } finally {
+      FileUtils.deleteQuietly(dir);
+    }
+  }
+
+  @Test
+  public void testUploadTooLarge() throws IOException {
+    File dir = Files.createTempDirectory("multipart").toFile();
+    try {
+      String prefix = "--" + BOUNDARY + "\r\n" + disposition("big.csv") + "\r\n\r\n";
+      byte[] body = body(prefix, content(1024 * 1024), "\r\n--" + BOUNDARY + "--\r\n");
+
+      assertThrows(
+          MultipartParser.UploadTooLargeException.class,
+          () -> new MultipartParser(new ByteArrayInputStream(body), BOUNDARY, 1000).parse(dir));
+      // 超过上限时删除已写入的临时文件
+      assertEquals(0, dir.list().length);
+    } finally {
+      FileUtils.deleteQuietly(dir);
+    }
+  }
+
+  @Test
+  public void testMissingClosingDelimiter() throws IOException {
+    File dir = Files.createTempDirectory("multipart").toFile();
+    try {
+      String prefix = "--" + BOUNDARY + "\r\n" + disposition("c.csv") + "\r\n\r\n";
+      byte[] body = body(prefix, content(BUFFER_SIZE + 10), "");
+
+      IOException e =
+          assertThrows(
+              IOException.class,
+              () -> new MultipartParser(new ByteArrayInputStream(body), BOUNDARY, 0).parse(dir));
+      assertFalse(e instanceof MultipartParser.UploadTooLargeException);
+      assertFalse(new File(dir, "c.csv").exists());
+      assertEquals(0, dir.list().length);
+    } finally {
+      FileUtils.deleteQuietly(dir);
+    }
+  }
+
+  @Test
+  public void testParseBoundary() {
+    assertEquals("abc", MultipartParser.parseBoundary("multipart/form-data; boundary=\"abc\""));
+    assertEquals(null, MultipartParser.parseBoundary("application/json"));
+  }
+
+  private static String disposition(String fileName) {
+    return "Content-Disposition: form-data; name=\"file\"; filename=\""
+        + fileName
+        + "\"\r\nContent-Type: text/csv";
+  }
+
+  private static byte[] content(int size) {
+    // 包含\r\n和-，但不会组成分隔符
+    byte[] row = "key,a\r\n0123456789-".getBytes(StandardCharsets.UTF_8);
+    byte[] content = new byte[size];
+    for (int i = 0; i < size; i++) {
+      content[i] = row[i % row.length];
+    }
+    return content;
+  }
+
+  private static byte[] body(String prefix, byte[] content, String suffix) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(prefix.getBytes(StandardCharsets.UTF_8));
+    out.write(content);
+    out.write(suffix.getBytes(StandardCharsets.UTF_8));
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,110 @@
+package org.apache.zeppelin.iginx.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+
+class ParallelZipBuilderTest {
+
+  @Test
+  public void testZipRoundTrip() throws IOException {
+    File dir = Files.createTempDirectory("zip").toFile();
+    ExecutorService pool = Executors.newFixedThreadPool(3);
+    try {
+      StringBuilder text = new StringBuilder();
+      for (int i = 0; i < 20000; i++) {
+        text.append(i).append(",value").append(i % 7).append('\n');
+      }
+      byte[] random = new byte[100 * 1024];
+      new Random(42).nextBytes(random);
+      List<File> files = new ArrayList<>();
+      // 文本文件DEFLATED；.png按扩展名STORED；随机数据压缩后变大，改为STORED；空文件
+      files.add(write(dir, "b.csv", text.toString().getBytes(StandardCharsets.UTF_8)));
+      files.add(write(dir, "a.png", random));
+      files.add(write(dir, "random.bin", random));
+      files.add(write(dir, "empty.txt", new byte[0]));
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      File tempDir = new File(dir, ".zip-tmp");
+      new ParallelZipBuilder(pool, 6).write(files, out, tempDir);
+      assertFalse(tempDir.exists());
+
+      List<String> names = new ArrayList<>();
+      try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+          names.add(entry.getName());
+          File source = files.get(names.size() - 1);
+          assertArrayEquals(Files.readAllBytes(source.toPath()), readEntry(zip));
+          int expectedMethod =
+              source.getName().endsWith(".csv") && source.length() > 100
+                  ? ZipEntry.DEFLATED
+                  : ZipEntry.STORED;
+          assertEquals(expectedMethod, entry.getMethod(), entry.getName());
+        }
+        assertNull(zip.getNextEntry());
+      }
+      assertEquals(Arrays.asList("b.csv", "a.png", "random.bin", "empty.txt"), names);
+    } finally {
+      pool.shutdownNow();
+      FileUtils.deleteQuietly(dir);
+    }
+  }
+
+  @Test
+  public void testStoredLevel() throws IOException {
+    File dir = Files.createTempDirectory("zip").toFile();
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    try {
+      byte[] content = "key,a\n1,2\n1,2\n1,2\n1,2\n".getBytes(StandardCharsets.UTF_8);
+      File file = write(dir, "a.csv", content);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      new ParallelZipBuilder(pool, 0).write(Arrays.asList(file), out, new File(dir, ".zip-tmp"));
+
+      try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+        ZipEntry entry = zip.getNextEntry();
+        assertEquals("a.csv", entry.getName());
+        assertEquals(ZipEntry.STORED, entry.getMethod());
+        assertArrayEquals(content, readEntry(zip));
+      }
+    } finally {
+      pool.shutdownNow();
+      FileUtils.deleteQuietly(dir);
+    }
+  }
+
+  private static byte[] readEntry(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int len;
+    while ((len = in.read(buffer)) != -1) {
+      out.write(buffer, 0, len);
+    }
+    return out.toByteArray();
+  }
+
+  private static File write(File dir, String name, byte[] content) throws IOException {
+    File file = new File(dir, name);
+    Files.write(file.toPath(), content);
+    return file;
+  }
+}
@@ -0,0 +1,53 @@
+package org.apache.zeppelin.iginx.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class PathPatternTest {
+
+  @Test
+  public void testExactMatch() {
+    PathPattern pattern = PathPattern.compile("us.d1.s1");
+    assertEquals("us.d1.s1", pattern.getPrefix());
+    assertTrue(pattern.matches("us.d1.s1"));
+    assertFalse(pattern.matches("us.d1.s10"));
+    assertFalse(pattern.matches("us.d1"));
+  }
+
+  @Test
+  public void testStarMatchesAcrossDots() {
+    PathPattern pattern = PathPattern.compile("us.*");
+    assertEquals("us.", pattern.getPrefix());
+    assertTrue(pattern.matches("us.d1"));
+    assertTrue(pattern.matches("us.d1.s1"));
+    assertFalse(pattern.matches("us"));
+    assertFalse(pattern.matches("usa.d1"));
+
+    PathPattern all = PathPattern.compile("*");
+    assertEquals("", all.getPrefix());
+    assertTrue(all.matches("a"));
+    assertTrue(all.matches("a.b.c"));
+  }
+
+  @Test
+  public void testMiddleAndSuffix() {
+    PathPattern pattern = PathPattern.compile("us.*.s1");
+    assertEquals("us.", pattern.getPrefix());
+    assertTrue(pattern.matches("us.d1.s1"));
+    assertTrue(pattern.matches("us.d1.d2.s1"));
+    assertFalse(pattern.matches("us.d1.s2"));
+    // 前缀与后缀不能重叠
+    assertFalse(pattern.matches("us.s1"));
+
+    PathPattern middle = PathPattern.compile("*.d*.s*");
+    assertTrue(middle.matches("us.d1.s1"));
+    assertFalse(middle.matches("us.s1.d1"));
+    // 中间的字面量不能占用后缀的位置
+    PathPattern overlap = PathPattern.compile("a*bc*c");
+    assertTrue(overlap.matches("abcc"));
+    assertFalse(overlap.matches("abc"));
+  }
+}
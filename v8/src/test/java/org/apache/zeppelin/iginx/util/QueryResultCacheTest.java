@@ -0,0 +1,59 @@
+package org.apache.zeppelin.iginx.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import cn.edu.tsinghua.iginx.thrift.SqlType;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class QueryResultCacheTest {
+  private static final List<List<String>> ROWS =
+      Collections.singletonList(Arrays.asList("key", "a"));
+
+  @Test
+  public void testPutAndGet() {
+    QueryResultCache cache = new QueryResultCache(10, 1 << 20, 60_000);
+    String key = QueryResultCache.buildKey(" select * from t ;; ", false, "ms");
+    assertEquals(key, QueryResultCache.buildKey("select * from t", false, "ms"));
+
+    cache.put(key, cache.getGeneration(), SqlType.Query, ROWS);
+    QueryResultCache.CachedResult result = cache.get(key);
+    assertNotNull(result);
+    assertEquals(SqlType.Query, result.getSqlType());
+    assertEquals(ROWS, result.getRows());
+
+    cache.invalidateAll();
+    assertNull(cache.get(key));
+  }
+
+  @Test
+  public void testStaleGenerationIsDropped() {
+    QueryResultCache cache = new QueryResultCache(10, 1 << 20, 60_000);
+    String key = QueryResultCache.buildKey("select * from t", false, "ms");
+    // 查询执行期间有写操作清空了缓存，执行前读取的结果不能再写入
+    long generation = cache.getGeneration();
+    cache.invalidateAll();
+    cache.put(key, generation, SqlType.Query, ROWS);
+    assertNull(cache.get(key));
+
+    cache.put(key, cache.getGeneration(), SqlType.Query, ROWS);
+    assertNotNull(cache.get(key));
+  }
+
+  @Test
+  public void testEvictLeastRecentlyUsed() {
+    QueryResultCache cache = new QueryResultCache(2, 1 << 20, 60_000);
+    long generation = cache.getGeneration();
+    cache.put("a", generation, SqlType.Query, ROWS);
+    cache.put("b", generation, SqlType.Query, ROWS);
+    cache.get("a");
+    cache.put("c", generation, SqlType.Query, ROWS);
+    assertNotNull(cache.get("a"));
+    assertNull(cache.get("b"));
+    assertNotNull(cache.get("c"));
+  }
+}
@@ -0,0 +1,114 @@
+package org.apache.zeppelin.iginx.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class SqlLexerTest {
+
+  @Test
+  public void testSplitOutsideQuotes() {
+    List<SqlStatement> statements =
+        SqlLexer.split("insert into t(key, a) values (1, 'x;y');\nselect * from t;");
+    assertEquals(2, statements.size());
+    assertEquals("insert into t(key, a) values (1, 'x;y');", statements.get(0).getSql());
+    assertEquals(SqlStatement.Type.INSERT, statements.get(0).getType());
+    assertEquals("select * from t;", statements.get(1).getSql());
+    assertEquals(SqlStatement.Type.QUERY, statements.get(1).getType());
+  }
+
+  @Test
+  public void testCommentsAndWhitespace() {
+    List<SqlStatement> statements =
+        SqlLexer.split("-- comment;\nshow   /* block; */\n\tcolumns ;;  ");
+    assertEquals(1, statements.size());
+    assertEquals("show columns;", statements.get(0).getSql());
+    assertTrue(statements.get(0).isReadOnly());
+  }
+
+  @Test
+  public void testDoubleMinusIsNotAlwaysComment() {
+    List<SqlStatement> statements = SqlLexer.split("select 1--2 from t;\nselect a --x\nfrom t;");
+    assertEquals(2, statements.size());
+    assertEquals("select 1--2 from t;", statements.get(0).getSql());
+    assertEquals("select a --x from t;", statements.get(1).getSql());
+
+    statements = SqlLexer.split("select a -- comment; still comment\nfrom t;--\n");
+    assertEquals(1, statements.size());
+    assertEquals("select a from t;", statements.get(0).getSql());
+  }
+
+  @Test
+  public void testDirectives() {
+    List<SqlStatement> statements = SqlLexer.split(">graph.tree >print.key.time show columns");
+    assertEquals(1, statements.size());
+    assertEquals(
+        Arrays.asList(">graph.tree", ">print.key.time"), statements.get(0).getDirectives());
+    assertEquals("show columns", statements.get(0).getSql());
+
+    statements = SqlLexer.split("select a > 1 from t;");
+    assertEquals(Collections.emptyList(), statements.get(0).getDirectives());
+  }
+
+  @Test
+  public void testOutfile() {
+    List<SqlStatement> statements =
+        SqlLexer.split("select * from t into outfile \"/tmp/Out;Dir\" as stream showimg TRUE;");
+    SqlStatement statement = statements.get(0);
+    assertEquals(SqlStatement.Type.OUTFILE, statement.getType());
+    assertEquals("/tmp/Out;Dir", statement.getOutfilePath());
+    assertTrue(statement.isShowImg());
+
+    statement = SqlLexer.split("select * from t into outfile \"/tmp/out\" as csv;").get(0);
+    assertEquals(SqlStatement.Type.QUERY, statement.getType());
+    assertFalse(statement.isShowImg());
+  }
+
+  @Test
+  public void testReplaceOutfilePath() {
+    SqlStatement statement =
+        SqlLexer.split("select * from t into outfile '/tmp/x' as stream;").get(0);
+    assertEquals(SqlStatement.Type.OUTFILE, statement.getType());
+    assertEquals("/tmp/x", statement.getOutfilePath());
+    assertEquals(
+        "select * from t into outfile '/srv/out' as stream;",
+        statement.replaceOutfilePath("/srv/out"));
+
+    statement =
+        SqlLexer.split("select \"a\" from t into outfile \"/tmp/x\" as stream showimg true;")
+            .get(0);
+    assertEquals(
+        "select \"a\" from t into outfile \"/srv/out\" as stream showimg true;",
+        statement.replaceOutfilePath("/srv/out"));
+  }
+
+  @Test
+  public void testLoadDataAndCreateFunction() {
+    assertEquals(
+        SqlStatement.Type.LOAD_DATA,
+        SqlLexer.split("LOAD DATA FROM INFILE \"a.csv\" AS CSV INTO t(key, a);").get(0).getType());
+    assertEquals(
+        SqlStatement.Type.CREATE_FUNCTION,
+        SqlLexer.split("CREATE FUNCTION UDTF \"f\" FROM \"F\" IN \"f.py\";").get(0).getType());
+    assertEquals(
+        SqlStatement.Type.OTHER,
+        SqlLexer.split("create user root1 identified by root;").get(0).getType());
+  }
+
+  @Test
+  public void testInsertValues() {
+    SqlStatement statement =
+        SqlLexer.split("INSERT INTO us.d1(key, s1) VALUES (1, 'values'), (2, \"b\");").get(0);
+    assertTrue(statement.isCoalescableInsert());
+    assertEquals("INSERT INTO us.d1(key, s1)", statement.getInsertPrefix());
+    assertEquals("(1, 'values'), (2, \"b\")", statement.getInsertValues());
+
+    assertFalse(
+        SqlLexer.split("insert into t(key, a) select key, a from s;").get(0).isCoalescableInsert());
+  }
+}